@@ -0,0 +1,79 @@
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An <code>InputStream</code> that reads bytes compressed by an
+ * <code>AdaptiveHuffmanOutputStream</code> from a <code>BitInputStream</code>, keeping the same
+ * code tree as the encoder did. The stream ends when the code for PSEUDO_EOF is read.
+ */
+public class AdaptiveHuffmanInputStream extends InputStream {
+
+    private BitInputStream myInput;
+    private AdaptiveHuffmanTree myTree;
+    private boolean myDone;
+
+    /**
+     * Create a stream that reads codes from a new <code>BlockBitInputStream</code> on in.
+     * @param in is the stream the compressed bytes are read from
+     */
+    public AdaptiveHuffmanInputStream(InputStream in) {
+        this(in instanceof BitInputStream ? (BitInputStream) in : new BlockBitInputStream(in));
+    }
+
+    /**
+     * Create a stream that reads codes from <code>in</code>, starting at its current bit.
+     * @param in is the bit stream the codes are read from
+     */
+    public AdaptiveHuffmanInputStream(BitInputStream in) {
+        myInput = in;
+        myTree = new AdaptiveHuffmanTree();
+    }
+
+    /**
+     * Returns the next byte, or -1 once PSEUDO_EOF has been read.
+     * @return the next uncompressed byte, or -1 at the end of the data
+     * @throws IOException if the compressed data ends before PSEUDO_EOF or is not valid
+     */
+    public int read() throws IOException {
+        if (myDone) {
+            return -1;
+        }
+        int value = myTree.decode(myInput);
+        if (value == -1) {
+            throw new IOException("Compressed data ended before the end of file code.");
+        }
+        if (value == IHuffConstants.PSEUDO_EOF) {
+            myDone = true;
+            return -1;
+        }
+        return value;
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes into <code>b</code> starting at <code>off</code>.
+     * @param b is the array to read into
+     * @param off is the index of b to put the first byte
+     * @param len is the most bytes to read
+     * @return the number of bytes read, or -1 once PSEUDO_EOF has been read
+     * @throws IOException if the compressed data ends before PSEUDO_EOF or is not valid
+     */
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int numRead = 0;
+        int value = read();
+        while (value != -1) {
+            b[off + numRead++] = (byte) value;
+            value = numRead < len ? read() : -1;
+        }
+        return numRead == 0 ? -1 : numRead;
+    }
+
+    /**
+     * Close the bit stream.
+     */
+    public void close() {
+        myInput.close();
+    }
+}
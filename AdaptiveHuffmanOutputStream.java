@@ -0,0 +1,86 @@
+import java.io.OutputStream;
+
+/**
+ * An <code>OutputStream</code> that compresses the bytes written to it with adaptive Huffman
+ * coding and writes the codes to a <code>BitOutputStream</code>. There is no header and no
+ * counting pass, so it can compress a stream of unknown length, such as a pipe, using a fixed
+ * amount of memory. Closing the stream writes the code for PSEUDO_EOF, so the matching
+ * <code>AdaptiveHuffmanInputStream</code> knows where the data ends.
+ * <P>
+ * Like <code>BitOutputStream</code>, exceptions are rethrown as <code>RuntimeException</code>
+ * objects. <code>flush</code> passes on whole bytes only; the bits of a partly written byte are
+ * written when the stream is closed.
+ */
+public class AdaptiveHuffmanOutputStream extends OutputStream {
+
+    private BitOutputStream myOutput;
+    private AdaptiveHuffmanTree myTree;
+    private long myBitsWritten;
+    private boolean myClosed;
+
+    /**
+     * Create a stream that writes codes to a new <code>BlockBitOutputStream</code> on out.
+     * @param out is the stream the compressed bytes are written to
+     */
+    public AdaptiveHuffmanOutputStream(OutputStream out) {
+        this(out instanceof BitOutputStream ? (BitOutputStream) out
+                : new BlockBitOutputStream(out));
+    }
+
+    /**
+     * Create a stream that writes codes to <code>out</code>, starting at its current bit.
+     * @param out is the bit stream the codes are written to
+     */
+    public AdaptiveHuffmanOutputStream(BitOutputStream out) {
+        myOutput = out;
+        myTree = new AdaptiveHuffmanTree();
+    }
+
+    /**
+     * Compress one byte.
+     * @param b is the byte to compress, in the low 8 bits
+     */
+    public void write(int b) {
+        myBitsWritten += myTree.encode(myOutput, b & 0xff);
+    }
+
+    /**
+     * Compress <code>len</code> bytes of <code>b</code> starting at <code>off</code>.
+     * @param b is the array of bytes
+     * @param off is the index of the first byte to compress
+     * @param len is the number of bytes to compress
+     */
+    public void write(byte[] b, int off, int len) {
+        for (int x = off; x < off + len; x++) {
+            myBitsWritten += myTree.encode(myOutput, b[x] & 0xff);
+        }
+    }
+
+    /**
+     * Pass on the whole bytes of codes written so far. The bits of a partly written byte
+     * are kept, as padding them to a byte boundary would put bits in the middle of the data.
+     */
+    public void flush() {
+        myOutput.flushWholeBytes();
+    }
+
+    /**
+     * Write the code for PSEUDO_EOF, then flush and close the bit stream.
+     */
+    public void close() {
+        if (!myClosed) {
+            myClosed = true;
+            myBitsWritten += myTree.encode(myOutput, IHuffConstants.PSEUDO_EOF);
+            myOutput.close();
+        }
+    }
+
+    /**
+     * Returns the number of bits of codes written so far, including PSEUDO_EOF once
+     * the stream is closed, but not the padding of the last byte.
+     * @return the number of bits written
+     */
+    public long getBitsWritten() {
+        return myBitsWritten;
+    }
+}
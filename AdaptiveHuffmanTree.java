@@ -0,0 +1,209 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The code tree of adaptive Huffman coding, using the FGK algorithm. The tree starts as a single
+ * NYT (not yet transmitted) leaf and is updated after every value is coded, so the encoder and
+ * decoder keep identical trees without any header or counting pass. A value's first occurrence is
+ * sent as the code of the NYT leaf followed by the value itself, after which the NYT leaf splits
+ * into a new NYT leaf and a leaf for the value.
+ * <P>
+ * Nodes are kept in arrays indexed by their number in the sibling property order: weights never
+ * decrease as the number goes up, the root has the highest number and the two children of a node
+ * are next to each other, the 0 child first. Updating a leaf swaps each node on the path to the
+ * root with the highest numbered node of the same weight before incrementing it, which keeps the
+ * sibling property, so the tree is always a Huffman tree for the counts so far. The arrays hold
+ * every possible node, so the tree never allocates after it is made.
+ */
+public class AdaptiveHuffmanTree implements IHuffConstants {
+
+    /** number of bits used to send a value the first time it is coded */
+    public static final int BITS_PER_NEW_VALUE = BITS_PER_WORD + 1;
+
+    private static final int NUM_VALUES = ALPH_SIZE + 1;
+    private static final int NUM_NODES = 2 * (NUM_VALUES + 1) - 1;
+    private static final int ROOT = NUM_NODES - 1;
+    private static final int NONE = -1;
+
+    private long[] weights;
+    private int[] parents;
+    private int[] children;
+    private int[] values;
+    private int[] leaves;
+    private int[] pathWords;
+    private int nyt;
+
+    /**
+     * makes a tree that is only the NYT leaf
+     * pre: none
+     * post: none
+     */
+    public AdaptiveHuffmanTree() {
+        weights = new long[NUM_NODES];
+        parents = new int[NUM_NODES];
+        children = new int[NUM_NODES];
+        values = new int[NUM_NODES];
+        leaves = new int[NUM_VALUES];
+        pathWords = new int[NUM_VALUES / BITS_PER_INT + 1];
+        Arrays.fill(leaves, NONE);
+        Arrays.fill(children, NONE);
+        Arrays.fill(values, NONE);
+        parents[ROOT] = NONE;
+        nyt = ROOT;
+    }
+
+    /**
+     * writes the code for value, and the value itself if it is new, then updates the tree
+     * pre: out != null, 0 <= value <= PSEUDO_EOF
+     * post: the tree has been updated for value
+     * @param out, the stream the code is written to
+     * @param value, the value to code
+     * @return the number of bits written
+     */
+    public int encode(BitOutputStream out, int value) {
+        if(value < 0 || value >= NUM_VALUES) {
+            throw new IllegalArgumentException("Violation of precondition: encode. "
+                    + "Value out of range: " + value);
+        }
+        boolean isNew = leaves[value] == NONE;
+        int numBits = writePath(out, isNew ? nyt : leaves[value]);
+        if(isNew) {
+            out.writeBits(BITS_PER_NEW_VALUE, value);
+            numBits += BITS_PER_NEW_VALUE;
+        }
+        update(value);
+        return numBits;
+    }
+
+    /**
+     * reads the code of the next value, and the value itself if it is new, then updates the tree
+     * pre: in != null
+     * post: the tree has been updated for the value returned
+     * @param in, the stream the code is read from
+     * @return the value decoded, or -1 if in ends first
+     * @throws IOException if in can't be read or a new value is out of range
+     */
+    public int decode(BitInputStream in) throws IOException {
+        int node = ROOT;
+        while(children[node] != NONE) {
+            int bit = in.readBits(1);
+            if(bit == -1) {
+                return -1;
+            }
+            node = children[node] + bit;
+        }
+        int value = values[node];
+        if(node == nyt) {
+            value = in.readBits(BITS_PER_NEW_VALUE);
+            if(value == -1) {
+                return -1;
+            }
+            if(value >= NUM_VALUES || leaves[value] != NONE) {
+                throw new IOException("Something is wrong with the adaptive code "
+                        + "in the compressed file.");
+            }
+        }
+        update(value);
+        return value;
+    }
+
+    /**
+     * writes the path from the root to node
+     * @param out, the stream the path is written to
+     * @param node, the node whose code is written
+     * @return the number of bits written
+     */
+    private int writePath(BitOutputStream out, int node) {
+
+        //the path is found from the leaf up, so the last bits are found first. Whole ints of
+        //bits are saved in reverse order, the bits nearest the root are left over in code
+        int numWords = 0;
+        int code = 0;
+        int length = 0;
+        int numBits = 0;
+        while(node != ROOT) {
+            int parent = parents[node];
+            code |= (node - children[parent]) << length;
+            length++;
+            numBits++;
+            if(length == BITS_PER_INT) {
+                pathWords[numWords++] = code;
+                code = 0;
+                length = 0;
+            }
+            node = parent;
+        }
+        out.writeBits(length, code);
+        while(numWords > 0) {
+            out.writeBits(BITS_PER_INT, pathWords[--numWords]);
+        }
+        return numBits;
+    }
+
+    /**
+     * adds one to the weight of value's leaf and of every node above it, swapping nodes to keep
+     * the sibling property. A new value first gets a leaf split off from the NYT leaf.
+     * @param value, the value just coded
+     */
+    private void update(int value) {
+        int node = leaves[value];
+        if(node == NONE) {
+
+            //the NYT leaf becomes the parent of the new NYT leaf and the value's leaf
+            int oldNyt = nyt;
+            nyt = oldNyt - 2;
+            node = oldNyt - 1;
+            children[oldNyt] = nyt;
+            parents[nyt] = oldNyt;
+            parents[node] = oldNyt;
+            values[node] = value;
+            leaves[value] = node;
+        }
+        while(node != NONE) {
+            int leader = node;
+            while(leader < ROOT && weights[leader + 1] == weights[node]) {
+                leader++;
+            }
+            if(leader != node && leader != parents[node]) {
+                swap(node, leader);
+                node = leader;
+            }
+            weights[node]++;
+            node = parents[node];
+        }
+    }
+
+    /**
+     * swaps the subtrees numbered a and b. Each number keeps its parent, so the subtrees trade
+     * places in the tree.
+     * @param a, the number of one node
+     * @param b, the number of another node with the same weight
+     */
+    private void swap(int a, int b) {
+        int tempChild = children[a];
+        children[a] = children[b];
+        children[b] = tempChild;
+        int tempValue = values[a];
+        values[a] = values[b];
+        values[b] = tempValue;
+        adopt(a);
+        adopt(b);
+    }
+
+    /**
+     * points the children of node, or the leaf of its value, back at node
+     * @param node, a node whose contents just moved
+     */
+    private void adopt(int node) {
+        if(children[node] != NONE) {
+            parents[children[node]] = node;
+            parents[children[node] + 1] = node;
+        }
+        else if(values[node] != NONE) {
+            leaves[values[node]] = node;
+        }
+        else {
+            nyt = node;
+        }
+    }
+}
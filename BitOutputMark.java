@@ -0,0 +1,84 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Throughput benchmark for writing bits with <code>BitOutputStream</code> and
+ * <code>BlockBitOutputStream</code>. Both classes write the same sequence of
+ * (howManyBits, value) pairs, sized like Huffman codes, to a stream that discards
+ * the bytes. The output of both classes is also compared byte for byte.
+ */
+public class BitOutputMark {
+
+    private static final int NUM_CODES = 1 << 22;
+    private static final int MAX_CODE_LENGTH = 20;
+    private static final int ROUNDS = 10;
+    private static final int WARMUP_ROUNDS = 3;
+
+    private int[] myLengths;
+    private int[] myValues;
+    private long myTotalBits;
+
+    public BitOutputMark(long seed) {
+        Random rand = new Random(seed);
+        myLengths = new int[NUM_CODES];
+        myValues = new int[NUM_CODES];
+        for (int i = 0; i < NUM_CODES; i++) {
+            // mostly short codes like real data, with some long ones
+            myLengths[i] = 1 + Math.min(rand.nextInt(8) + rand.nextInt(8), MAX_CODE_LENGTH - 1);
+            myValues[i] = rand.nextInt();
+            myTotalBits += myLengths[i];
+        }
+    }
+
+    private void writeAll(BitOutputStream out) {
+        for (int i = 0; i < NUM_CODES; i++) {
+            out.writeBits(myLengths[i], myValues[i]);
+        }
+        out.flush();
+    }
+
+    private BitOutputStream makeStream(boolean block, OutputStream out) {
+        return block ? new BlockBitOutputStream(out)
+                : new BitOutputStream(new BufferedOutputStream(out));
+    }
+
+    private byte[] outputOf(boolean block) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeAll(makeStream(block, bytes));
+        return bytes.toByteArray();
+    }
+
+    /*
+     * Return the best time in seconds to write all the codes.
+     */
+    private double time(boolean block) {
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            long start = System.nanoTime();
+            writeAll(makeStream(block, OutputStream.nullOutputStream()));
+            double time = (System.nanoTime() - start) / 1e9;
+            if (round >= WARMUP_ROUNDS) {
+                best = Math.min(best, time);
+            }
+        }
+        return best;
+    }
+
+    public void doMark() {
+        boolean same = Arrays.equals(outputOf(false), outputOf(true));
+        System.out.printf("output identical: %b\n", same);
+        double mb = myTotalBits / 8.0 / (1 << 20);
+        double bitTime = time(false);
+        double blockTime = time(true);
+        System.out.printf("%-22s %8.1f MB/s\n", "BitOutputStream", mb / bitTime);
+        System.out.printf("%-22s %8.1f MB/s\n", "BlockBitOutputStream", mb / blockTime);
+        System.out.printf("speedup %.2fx\n", bitTime / blockTime);
+    }
+
+    public static void main(String[] args) {
+        new BitOutputMark(args.length > 0 ? Long.parseLong(args[0]) : 42).doMark();
+    }
+}
@@ -102,6 +102,20 @@ public class BitOutputStream extends OutputStream {
         }
     }
 
+    /**
+     * Flushes the whole bytes written so far to the underlying stream
+     * without padding. The bits of a partly written byte are kept and
+     * written with the bits that follow them.
+     * @throws RuntimeException if there's a problem flushing
+     */
+    public void flushWholeBytes() {
+        try {
+            myOutput.flush();    
+        } catch (java.io.IOException ioe){
+            throw new RuntimeException("error on flush " + ioe);
+        }
+    }
+
     /**
      * Releases system resources associated with file and
      * flushes bits not yet written. Either this function
@@ -0,0 +1,194 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A <code>BitInputStream</code> that keeps up to 64 bits in a word-sized buffer and
+ * refills it from a block of bytes, a whole int at a time when it can. The block is
+ * either a <code>byte[]</code> or <code>ByteBuffer</code> supplied by the client, or
+ * is read from an <code>InputStream</code> with one call per block, so reading bits
+ * no longer costs a call to the underlying stream for every byte.
+ * <P>
+ * Besides <code>readBits</code> the stream supports lookahead with
+ * <code>peekBits</code> and <code>skipBits</code>, as needed by table driven
+ * decoding. Bits are read most significant bit first, the same as
+ * <code>BitInputStream</code>. Like a <code>BitInputStream</code> constructed
+ * from an <code>InputStream</code>, this stream cannot be reset.
+ */
+public class BlockBitInputStream extends BitInputStream {
+
+    private static final int BITS_PER_BYTE = 8;
+    private static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+    private InputStream myInput;
+    private ByteBuffer myBlock;
+    private long myWindow;
+    private int myBitCount;
+
+    /**
+     * Open a stream that reads blocks of a default size from the supplied InputStream.
+     * @param in is the stream from which bits are read.
+     */
+    public BlockBitInputStream(InputStream in) {
+        this(in, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Open a stream that reads blocks of <code>blockSize</code> bytes from the
+     * supplied InputStream.
+     * @param in is the stream from which bits are read.
+     * @param blockSize is the number of bytes read from in at a time
+     * @throws IllegalArgumentException if blockSize is less than 1
+     */
+    public BlockBitInputStream(InputStream in, int blockSize) {
+        super(in);
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("block size must be positive: " + blockSize);
+        }
+        myInput = in;
+        myBlock = ByteBuffer.allocate(blockSize);
+        myBlock.limit(0);
+    }
+
+    /**
+     * Open a stream that reads the bits of an array.
+     * @param bytes is the array from which bits are read.
+     */
+    public BlockBitInputStream(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Open a stream that reads the bits between the position and the limit of
+     * <code>buffer</code>, for example a memory mapped file. The buffer's
+     * position is not changed.
+     * @param buffer is the buffer from which bits are read.
+     */
+    public BlockBitInputStream(ByteBuffer buffer) {
+        super((InputStream) null);
+        myBlock = buffer.slice(); // a slice always reads ints most significant byte first
+    }
+
+    /*
+     * Fill the window until it holds more than 32 bits or there is no input left.
+     */
+    private void fill() throws IOException {
+        while (myBitCount <= Integer.SIZE) {
+            if (myBlock.remaining() >= Integer.BYTES) {
+                myWindow = (myWindow << Integer.SIZE) | (myBlock.getInt() & 0xffffffffL);
+                myBitCount += Integer.SIZE;
+            } else if (myBlock.hasRemaining()) {
+                myWindow = (myWindow << BITS_PER_BYTE) | (myBlock.get() & 0xff);
+                myBitCount += BITS_PER_BYTE;
+            } else if (!readBlock()) {
+                return;
+            }
+        }
+    }
+
+    /*
+     * Read the next block from the underlying stream, return false if there is none.
+     */
+    private boolean readBlock() throws IOException {
+        if (myInput == null) {
+            return false;
+        }
+        int numRead;
+        try {
+            numRead = myInput.read(myBlock.array(), 0, myBlock.capacity());
+        } catch (IOException ioe) {
+            throw new IOException("bitreading trouble " + ioe);
+        }
+        myBlock.clear();
+        myBlock.limit(Math.max(numRead, 0));
+        return numRead > 0;
+    }
+
+    /**
+     * Returns the next bits of the stream without using them. If fewer than
+     * <code>howManyBits</code> bits are left the missing bits are 0.
+     *
+     * @param howManyBits is the number of bits to look at (0-32)
+     * @return the next bits, only rightmost <code>howManyBits</code> are valid
+     */
+    public int peekBits(int howManyBits) throws IOException {
+        if (myBitCount < howManyBits) {
+            fill();
+        }
+        long next = myBitCount >= howManyBits ? myWindow >>> (myBitCount - howManyBits)
+                : myWindow << (howManyBits - myBitCount);
+        return (int) (next & ((1L << howManyBits) - 1));
+    }
+
+    /**
+     * Uses the next bits of the stream, normally after looking at them with
+     * <code>peekBits</code>. Nothing is skipped if fewer than
+     * <code>howManyBits</code> bits are left.
+     *
+     * @param howManyBits is the number of bits to skip (0-32)
+     * @return true if the bits were skipped, false if not enough bits left
+     */
+    public boolean skipBits(int howManyBits) throws IOException {
+        if (myBitCount < howManyBits) {
+            fill();
+            if (myBitCount < howManyBits) {
+                return false;
+            }
+        }
+        myBitCount -= howManyBits;
+        return true;
+    }
+
+    /**
+     * Returns the number of bits requested as rightmost bits in
+     * returned value, returns -1 if not enough bits available to
+     * satisfy the request.
+     *
+     * @param howManyBits is the number of bits to read and return (0-32)
+     * @return the value read, only rightmost <code>howManyBits</code>
+     * are valid, returns -1 if not enough bits left
+     */
+    public int readBits(int howManyBits) throws IOException {
+        int value = peekBits(howManyBits);
+        return skipBits(howManyBits) ? value : -1;
+    }
+
+    /**
+     * Skips the rest of a partly read byte, so the next bit read is the first bit
+     * of a byte. Nothing is skipped at a byte boundary.
+     */
+    public void skipToByte() {
+        myBitCount -= myBitCount % BITS_PER_BYTE;
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes into <code>b</code>. When the stream is at a
+     * byte boundary the bytes are copied from the block, and then read straight from
+     * the underlying stream, instead of being read 8 bits at a time.
+     * @param b is the array the bytes are read into
+     * @param off is the index of b to put the first byte
+     * @param len is the most bytes to read
+     * @return the number of bytes read, or -1 if there are no bytes left
+     */
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (myBitCount % BITS_PER_BYTE != 0) {
+            return super.read(b, off, len);
+        }
+        int numRead = 0;
+        while (numRead < len && myBitCount > 0) {
+            myBitCount -= BITS_PER_BYTE;
+            b[off + numRead++] = (byte) (myWindow >>> myBitCount);
+        }
+        int fromBlock = Math.min(len - numRead, myBlock.remaining());
+        myBlock.get(b, off + numRead, fromBlock);
+        numRead += fromBlock;
+        if (numRead < len && myInput != null) {
+            int fromInput = myInput.read(b, off + numRead, len - numRead);
+            numRead += Math.max(fromInput, 0);
+        }
+        return numRead == 0 ? -1 : numRead;
+    }
+}
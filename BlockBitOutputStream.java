@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A <code>BitOutputStream</code> that collects bits in a 64-bit accumulator and
+ * spills them a whole word at a time into an internal block of bytes. The block is
+ * written to the underlying stream with one call when it fills up, so writing bits
+ * no longer costs a call to the underlying stream for every byte.
+ * <P>
+ * Bits are written most significant bit first, exactly like <code>BitOutputStream</code>,
+ * so the bytes written are identical for the same sequence of <code>writeBits</code>
+ * calls. As with <code>BitOutputStream</code>, client programs must call
+ * <code>flush</code> or <code>close</code> when finished writing or not all bits
+ * will be written.
+ * <P>
+ * Any exceptions generated are rethrown as <code>RuntimeException</code> objects
+ * so client code does not have to catch or rethrow them.
+ */
+public class BlockBitOutputStream extends BitOutputStream {
+
+    private static final int BITS_PER_BYTE = 8;
+    private static final int BITS_PER_SPILL = 32;
+    private static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+    private OutputStream myOutput;
+    private byte[] myBlock;
+    private int myBlockPos;
+    private long myAccumulator;
+    private int myBitCount;
+
+    /**
+     * Create a stream that writes-through to the <code>OutputStream</code> object
+     * passed as a parameter, in blocks of a default size.
+     * @param out is the output stream to which bits are written
+     */
+    public BlockBitOutputStream(OutputStream out) {
+        this(out, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Create a stream that writes-through to the <code>OutputStream</code> object
+     * passed as a parameter, in blocks of <code>blockSize</code> bytes.
+     * @param out is the output stream to which bits are written
+     * @param blockSize is the number of bytes collected before writing to out
+     * @throws IllegalArgumentException if blockSize is less than 8
+     */
+    public BlockBitOutputStream(OutputStream out, int blockSize) {
+        super(out);
+        if (blockSize < BITS_PER_BYTE) {
+            throw new IllegalArgumentException("block size must be at least 8 bytes: "
+                    + blockSize);
+        }
+        myOutput = out;
+        myBlock = new byte[blockSize];
+    }
+
+    /**
+     * Write the low 8-bits of b to this stream. Unlike <code>BitOutputStream</code>
+     * the byte goes through the bit buffer, so it may follow a partial byte.
+     * @param b the byte to write
+     */
+    public void write(int b) {
+        writeBits(BITS_PER_BYTE, b);
+    }
+
+    /**
+     * Write specified number of bits from value to the stream.
+     * @param howManyBits is number of bits to write (0-32)
+     * @param value is source of bits, rightmost bits are written
+     * @throws RuntimeException if there's an I/O problem writing bits
+     */
+    public void writeBits(int howManyBits, int value) {
+
+        // only right most bits valid, bits above myBitCount in the accumulator are
+        // never read so they don't need to be cleared
+        long bits = (value & 0xffffffffL) & ((1L << howManyBits) - 1);
+        myAccumulator = (myAccumulator << howManyBits) | bits;
+        myBitCount += howManyBits;
+        if (myBitCount >= BITS_PER_SPILL) {
+            myBitCount -= BITS_PER_SPILL;
+            spillWord((int) (myAccumulator >>> myBitCount));
+        }
+    }
+
+    /*
+     * Put the 4 bytes of word into the block, most significant byte first.
+     */
+    private void spillWord(int word) {
+        if (myBlockPos + 4 > myBlock.length) {
+            writeBlock();
+        }
+        myBlock[myBlockPos] = (byte) (word >>> 24);
+        myBlock[myBlockPos + 1] = (byte) (word >>> 16);
+        myBlock[myBlockPos + 2] = (byte) (word >>> 8);
+        myBlock[myBlockPos + 3] = (byte) word;
+        myBlockPos += 4;
+    }
+
+    /*
+     * Write the bytes collected in the block to the underlying stream.
+     */
+    private void writeBlock() {
+        try {
+            myOutput.write(myBlock, 0, myBlockPos);
+        } catch (IOException ioe) {
+            throw new RuntimeException("error writing bits " + ioe);
+        }
+        myBlockPos = 0;
+    }
+
+    /**
+     * Flushes bits not yet written, padding the last byte with zeros. Must be called
+     * by client programs if <code>close</code> isn't called.
+     * @throws RuntimeException if there's a problem writing bits
+     */
+    public void flush() {
+        while (myBitCount > 0) {
+            if (myBlockPos == myBlock.length) {
+                writeBlock();
+            }
+            int shift = myBitCount - BITS_PER_BYTE;
+            myBlock[myBlockPos++] = (byte) (shift >= 0 ? myAccumulator >>> shift
+                    : myAccumulator << -shift);
+            myBitCount = Math.max(shift, 0);
+        }
+        writeBlock();
+        try {
+            myOutput.flush();
+        } catch (IOException ioe) {
+            throw new RuntimeException("error on flush " + ioe);
+        }
+    }
+
+    /**
+     * Flushes the whole bytes written so far to the underlying stream without padding.
+     * The bits of a partly written byte stay in the accumulator and are written with the
+     * bits that follow them.
+     * @throws RuntimeException if there's a problem writing bits
+     */
+    public void flushWholeBytes() {
+        while (myBitCount >= BITS_PER_BYTE) {
+            if (myBlockPos == myBlock.length) {
+                writeBlock();
+            }
+            myBitCount -= BITS_PER_BYTE;
+            myBlock[myBlockPos++] = (byte) (myAccumulator >>> myBitCount);
+        }
+        writeBlock();
+        try {
+            myOutput.flush();
+        } catch (IOException ioe) {
+            throw new RuntimeException("error on flush " + ioe);
+        }
+    }
+
+    /**
+     * Releases system resources associated with the stream and
+     * flushes bits not yet written.
+     * @throws RuntimeException if close fails
+     */
+    public void close() {
+        flush();
+        try {
+            myOutput.close();
+        } catch (IOException ioe) {
+            throw new RuntimeException("error closing BlockBitOutputStream " + ioe);
+        }
+    }
+}
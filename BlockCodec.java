@@ -0,0 +1,751 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Compresses data in the STORE_BLOCKS format. The input is split into blocks that are
+ * compressed independently, each with its own canonical Huffman code, so the blocks can be
+ * compressed on every core of a ForkJoinPool. Blocks are written in order as they finish, with
+ * a bounded number in flight so memory use doesn't depend on the size of the input.
+ * <P>
+ * The format, after the magic number and STORE_BLOCKS, is:
+ * <pre>
+ *   block size, 32 bits
+ *   for each block:
+ *     block type, 8 bits
+ *     number of bytes in the block before compressing, 32 bits
+ *     number of bytes of compressed data, 32 bits
+ *     compressed data: for a HUFFMAN_BLOCK a canonical code header, the codes of the bytes,
+ *     PSEUDO_EOF, padded to a byte; for a STORED_BLOCK the bytes themselves; for a BWT_BLOCK
+ *     the block transformed and coded by BurrowsWheelerCode, padded to a byte
+ *   END_OF_BLOCKS, 8 bits
+ *   index: number of blocks, 32 bits, then the offset of each block from the start of the file, 64 bits
+ *   number of bytes in the index, 32 bits
+ * </pre>
+ * A block is stored as it is when coding it would not make it smaller, as in data that is
+ * already compressed, so no block grows by more than its block header and the time to code it
+ * is saved.
+ * <P>
+ * A codec made to use the Burrows-Wheeler transform writes STORE_BWT in place of STORE_BLOCKS
+ * and also tries each block as a BWT_BLOCK, keeping whichever of the three is smallest. Sorting
+ * the block takes much longer than counting it, so this trades time on every core for a much
+ * better ratio on text. The blocks are read the same way, so either format is uncompressed by
+ * any codec.
+ * <P>
+ * Every block starts at a byte, so a block can be found from the index and decoded on its own.
+ * When the file is in memory or mapped the blocks are found with the index and decoded in
+ * parallel the same way they are compressed. Otherwise they are read one after another without
+ * the index, and still decoded in parallel as they arrive.
+ */
+public class BlockCodec implements IHuffConstants {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+    public static final int MIN_BLOCK_SIZE = 1 << 10;
+    public static final int MAX_BLOCK_SIZE = 1 << 26;
+
+    private static final int BITS_PER_BYTE = 8;
+    private static final int BITS_PER_LONG = 64;
+    private static final int HUFFMAN_BLOCK = 0;
+    private static final int STORED_BLOCK = 1;
+    private static final int BWT_BLOCK = 2;
+    private static final int END_OF_BLOCKS = 0xff;
+    private static final int BLOCK_HEADER_BYTES = 9;
+    private static final int BLOCKS_IN_FLIGHT_PER_THREAD = 2;
+
+    private int blockSize;
+    private ForkJoinPool pool;
+    private boolean burrowsWheeler;
+    private long bytesRead;
+
+    /**
+     * makes a codec with the default block size that runs on the common ForkJoinPool
+     * pre: none
+     * post: none
+     */
+    public BlockCodec() {
+        this(DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * makes a codec that splits data into blocks of blockSize bytes and compresses them on pool
+     * pre: MIN_BLOCK_SIZE <= blockSize <= MAX_BLOCK_SIZE, pool != null
+     * post: none
+     * @param blockSize, the number of bytes in each block but the last
+     * @param pool, the pool the blocks are compressed on
+     */
+    public BlockCodec(int blockSize, ForkJoinPool pool) {
+        this(blockSize, pool, false);
+    }
+
+    /**
+     * makes a codec that splits data into blocks of blockSize bytes and compresses them on pool,
+     * trying the Burrows-Wheeler transform on each block if burrowsWheeler is true
+     * pre: MIN_BLOCK_SIZE <= blockSize <= MAX_BLOCK_SIZE, pool != null
+     * post: none
+     * @param blockSize, the number of bytes in each block but the last
+     * @param pool, the pool the blocks are compressed on
+     * @param burrowsWheeler, true to write the STORE_BWT format
+     */
+    public BlockCodec(int blockSize, ForkJoinPool pool, boolean burrowsWheeler) {
+        if(blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE || pool == null) {
+            throw new IllegalArgumentException("Violation of precondition: BlockCodec. Block size "
+                    + "must be between " + MIN_BLOCK_SIZE + " and " + MAX_BLOCK_SIZE
+                    + " and pool can't be null.");
+        }
+        this.blockSize = blockSize;
+        this.pool = pool;
+        this.burrowsWheeler = burrowsWheeler;
+    }
+
+    /**
+     * finds the number of bits compress would write for in, without writing them. Only the
+     * frequencies and code lengths of each block are made, in parallel.
+     * pre: in != null
+     * post: all of in has been read
+     * @param in, the data to measure
+     * @return the number of bits compress would write, including the magic number and format
+     * @throws IOException if in can't be read
+     */
+    public long compressedBits(InputStream in) throws IOException {
+        ArrayDeque<ForkJoinTask<Long>> inFlight = new ArrayDeque<ForkJoinTask<Long>>();
+        long bits = 3L * BITS_PER_INT + BITS_PER_BYTE; //magic, format, block size and end
+        long numBlocks = 0;
+        bytesRead = 0;
+        byte[] block = new byte[blockSize];
+        int length = readBlock(in, block);
+        while(length > 0) {
+            bytesRead += length;
+            numBlocks++;
+            inFlight.add(pool.submit(new MeasureTask(block, length, burrowsWheeler)));
+            if(inFlight.size() >= maxInFlight()) {
+                bits += inFlight.remove().join();
+            }
+            block = new byte[blockSize];
+            length = readBlock(in, block);
+        }
+        while(!inFlight.isEmpty()) {
+            bits += inFlight.remove().join();
+        }
+        return bits + indexBytes(numBlocks) * BITS_PER_BYTE;
+    }
+
+    /**
+     * compresses in to out in the STORE_BLOCKS or STORE_BWT format, starting with the magic
+     * number. Blocks are compressed in parallel and written in the order they are read.
+     * pre: in != null, out != null
+     * post: all of in has been read, out has been flushed but not closed
+     * @param in, the data to compress
+     * @param out, the stream the compressed data is written to
+     * @return the number of bits written
+     * @throws IOException if in can't be read or out can't be written
+     */
+    public long compress(InputStream in, OutputStream out) throws IOException {
+        out = new BufferedOutputStream(out);
+        ArrayDeque<ForkJoinTask<byte[]>> inFlight = new ArrayDeque<ForkJoinTask<byte[]>>();
+        long[] offsets = new long[16];
+        int numBlocks = 0;
+        long offset = 3 * BITS_PER_INT / BITS_PER_BYTE;
+        writeInt(out, MAGIC_NUMBER);
+        writeInt(out, burrowsWheeler ? STORE_BWT : STORE_BLOCKS);
+        writeInt(out, blockSize);
+
+        bytesRead = 0;
+        byte[] block = new byte[blockSize];
+        int length = readBlock(in, block);
+        while(length > 0) {
+            bytesRead += length;
+            inFlight.add(pool.submit(new EncodeTask(block, length, burrowsWheeler)));
+            if(inFlight.size() >= maxInFlight()) {
+                if(numBlocks == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, numBlocks * 2);
+                }
+                offsets[numBlocks++] = offset;
+                offset += writeBlock(out, inFlight.remove().join());
+            }
+            block = new byte[blockSize];
+            length = readBlock(in, block);
+        }
+        while(!inFlight.isEmpty()) {
+            if(numBlocks == offsets.length) {
+                offsets = Arrays.copyOf(offsets, numBlocks * 2);
+            }
+            offsets[numBlocks++] = offset;
+            offset += writeBlock(out, inFlight.remove().join());
+        }
+
+        //the index goes after the blocks, so its size is at the very end of the file
+        out.write(END_OF_BLOCKS);
+        writeInt(out, numBlocks);
+        for(int x = 0; x < numBlocks; x++) {
+            writeInt(out, (int) (offsets[x] >>> BITS_PER_INT));
+            writeInt(out, (int) offsets[x]);
+        }
+        writeInt(out, (int) (indexBytes(numBlocks) - BITS_PER_INT / BITS_PER_BYTE));
+        out.flush();
+        return (offset + 1 + indexBytes(numBlocks)) * BITS_PER_BYTE;
+    }
+
+    /**
+     * uncompresses a file in the STORE_BLOCKS or STORE_BWT format that is all in memory. The
+     * blocks are found with the index at the end of the file and decoded in parallel, each into
+     * an array of the size given in its block header, then written to out in order.
+     * pre: data != null, out != null
+     * post: out has been flushed but not closed
+     * @param data, the compressed file from fileOffset to the end, between its position and limit
+     * @param fileOffset, the number of bytes of the file before data, normally the magic number
+     * and header format
+     * @param out, the stream the uncompressed data is written to
+     * @return the number of bytes written
+     * @throws IOException if the compressed data is not valid or out can't be written
+     */
+    public long uncompress(ByteBuffer data, long fileOffset, OutputStream out)
+            throws IOException {
+        ByteBuffer file = data.slice();
+        return uncompress(new CompressedFile() {
+            long length() {
+                return fileOffset + file.limit();
+            }
+
+            ByteBuffer get(long position, int size) {
+                return file.slice((int) (position - fileOffset), size);
+            }
+        }, fileOffset, out);
+    }
+
+    /**
+     * uncompresses a mapped file in the STORE_BLOCKS or STORE_BWT format. The index and blocks
+     * are read from mapped windows of the file by their offsets, so the file can be larger
+     * than fits in a ByteBuffer and is never copied. The blocks are decoded in parallel and
+     * written to out in order.
+     * pre: in != null, out != null
+     * post: out has been flushed but not closed, what in reads next has not changed
+     * @param in, the compressed file
+     * @param fileOffset, the number of bytes of the file before the block size, normally the
+     * magic number and header format
+     * @param out, the stream the uncompressed data is written to
+     * @return the number of bytes written
+     * @throws IOException if the compressed data is not valid, in can't be mapped or out can't
+     * be written
+     */
+    public long uncompress(MappedFileInputStream in, long fileOffset, OutputStream out)
+            throws IOException {
+        return uncompress(new CompressedFile() {
+            private ByteBuffer window = ByteBuffer.allocate(0);
+            private long windowStart;
+
+            long length() {
+                return in.length();
+            }
+
+            ByteBuffer get(long position, int size) throws IOException {
+                if(position < windowStart || position + size > windowStart + window.limit()) {
+                    long windowSize = Math.min(MappedFileInputStream.DEFAULT_WINDOW_SIZE,
+                            in.length() - position);
+                    window = in.map(position, Math.max(windowSize, size));
+                    windowStart = position;
+                }
+                return window.slice((int) (position - windowStart), size);
+            }
+        }, fileOffset, out);
+    }
+
+    /**
+     * uncompresses the blocks of a file found with its index, decoding them in parallel
+     * @param file, the compressed file
+     * @param fileOffset, the offset in file of the block size
+     * @param out, the stream the uncompressed data is written to
+     * @return the number of bytes written
+     * @throws IOException if the compressed data is not valid or a stream can't be used
+     */
+    private long uncompress(CompressedFile file, long fileOffset, OutputStream out)
+            throws IOException {
+        long end = file.length();
+
+        //the index size is the last int of the file, END_OF_BLOCKS is just before the index
+        int minBytes = Integer.BYTES + 1 + 2 * Integer.BYTES;
+        if(end - fileOffset < minBytes) {
+            throw new IOException("Compressed file is too short to hold a block index.");
+        }
+        long indexStart = end - Integer.BYTES
+                - (file.get(end - Integer.BYTES, Integer.BYTES).getInt(0) & 0xffffffffL);
+        if(indexStart < fileOffset + Integer.BYTES + 1
+                || indexStart > end - 2 * Integer.BYTES
+                || (file.get(indexStart - 1, 1).get(0) & 0xff) != END_OF_BLOCKS) {
+            throw new IOException("Something is wrong with the block index of the compressed file.");
+        }
+        long blocksEnd = indexStart - 1;
+        int numBlocks = file.get(indexStart, Integer.BYTES).getInt(0);
+        if(numBlocks < 0 || indexBytes(numBlocks) != end - indexStart) {
+            throw new IOException("Something is wrong with the block index of the compressed file.");
+        }
+        long[] blockStarts = new long[numBlocks + 1];
+        for(int x = 0; x < numBlocks; x++) {
+            long blockStart = file.get(indexStart + Integer.BYTES + (long) x * Long.BYTES, 
+                    Long.BYTES).getLong(0);
+            long minStart = x == 0 ? fileOffset + Integer.BYTES 
+                    : blockStarts[x - 1] + BLOCK_HEADER_BYTES;
+            if(blockStart < minStart || blockStart > blocksEnd - BLOCK_HEADER_BYTES) {
+                throw new IOException("Something is wrong with the block index of the compressed "
+                        + "file.");
+            }
+            blockStarts[x] = blockStart;
+        }
+        blockStarts[numBlocks] = blocksEnd;
+
+        //decode a bounded number of blocks at a time, writing each in order as it is done
+        ArrayDeque<ForkJoinTask<byte[]>> inFlight = new ArrayDeque<ForkJoinTask<byte[]>>();
+        long numWritten = 0;
+        for(int x = 0; x < numBlocks; x++) {
+            long blockBytes = blockStarts[x + 1] - blockStarts[x];
+            if(blockBytes > MAX_BLOCK_SIZE + BLOCK_HEADER_BYTES) {
+                throw new IOException("Something is wrong with the block index of the compressed "
+                        + "file.");
+            }
+            ByteBuffer block = file.get(blockStarts[x], (int) blockBytes);
+            int payloadLength = block.getInt(1 + Integer.BYTES);
+            if(payloadLength < 0 || payloadLength > blockBytes - BLOCK_HEADER_BYTES) {
+                throw new IOException("Something is wrong with a block in the compressed file.");
+            }
+            inFlight.add(pool.submit(new DecodeTask(block.get(0) & 0xff, block.getInt(1),
+                    block.slice(BLOCK_HEADER_BYTES, payloadLength))));
+            if(inFlight.size() >= maxInFlight()) {
+                numWritten += writeBlock(out, joinDecoded(inFlight.remove()));
+            }
+        }
+        while(!inFlight.isEmpty()) {
+            numWritten += writeBlock(out, joinDecoded(inFlight.remove()));
+        }
+        out.flush();
+        return numWritten;
+    }
+
+    /**
+     * uncompresses the blocks of a file in the STORE_BLOCKS or STORE_BWT format as they are
+     * read, for streams that can't be mapped. The index is not needed to read the blocks in
+     * order. A bounded number of blocks are decoded in parallel and written to out in order.
+     * pre: in != null, out != null, the magic number and header format have been read from in
+     * post: the blocks have been read from in, out has been flushed but not closed
+     * @param in, the compressed data, positioned just after the header format
+     * @param out, the stream the uncompressed data is written to
+     * @return the number of bytes written
+     * @throws IOException if the compressed data is not valid or a stream can't be used
+     */
+    public long uncompress(BlockBitInputStream in, OutputStream out) throws IOException {
+        readChecked(in, BITS_PER_INT); //block size, not needed to decode
+        ArrayDeque<ForkJoinTask<byte[]>> inFlight = new ArrayDeque<ForkJoinTask<byte[]>>();
+        long numWritten = 0;
+        int type = readChecked(in, BITS_PER_BYTE);
+        while(type != END_OF_BLOCKS) {
+            int length = readChecked(in, BITS_PER_INT);
+            int payloadLength = readChecked(in, BITS_PER_INT);
+            if(length < 0 || payloadLength < 0 || length > MAX_BLOCK_SIZE 
+                    || payloadLength > MAX_BLOCK_SIZE) {
+                throw new IOException("Something is wrong with a block in the compressed file.");
+            }
+            byte[] payload = new byte[payloadLength];
+            readFully(in, payload);
+            inFlight.add(pool.submit(new DecodeTask(type, length, ByteBuffer.wrap(payload))));
+            if(inFlight.size() >= maxInFlight()) {
+                numWritten += writeBlock(out, joinDecoded(inFlight.remove()));
+            }
+            type = readChecked(in, BITS_PER_BYTE);
+        }
+        while(!inFlight.isEmpty()) {
+            numWritten += writeBlock(out, joinDecoded(inFlight.remove()));
+        }
+        out.flush();
+        return numWritten;
+    }
+
+    /**
+     * gets the number of bytes read by the last call to compressedBits or compress
+     * pre: none
+     * post: none
+     * @return the number of bytes of uncompressed data read
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * decodes one block's compressed data
+     * @param type, the type of the block
+     * @param payload, the compressed data between its position and limit
+     * @param length, the number of bytes in the block
+     * @return the bytes of the block
+     * @throws IOException if the compressed data is not valid
+     */
+    static byte[] decodeBlock(int type, ByteBuffer payload, int length) throws IOException {
+        if(type == BWT_BLOCK) {
+            return BurrowsWheelerCode.decode(new BlockBitInputStream(payload), length);
+        }
+        byte[] block = new byte[length];
+        if(type == STORED_BLOCK) {
+            if(payload.remaining() != length) {
+                throw new IOException("Something is wrong with a block in the compressed file.");
+            }
+            payload.get(payload.position(), block, 0, length);
+            return block;
+        }
+        if(type != HUFFMAN_BLOCK) {
+            throw new IOException("Unknown block type in compressed file: " + type);
+        }
+        BlockBitInputStream in = new BlockBitInputStream(payload);
+        CanonicalHuffmanCode code = CanonicalHuffmanCode.read(in, ALPH_SIZE + 1);
+        HuffmanDecodeTable table = new HuffmanDecodeTable(code.getCodes(), code.getCodeLengths());
+        for(int x = 0; x < length; x++) {
+            int value = table.decodeValue(in);
+            if(value < 0 || value >= ALPH_SIZE) {
+                throw new IOException("Something is wrong with a block in the compressed file.");
+            }
+            block[x] = (byte) value;
+        }
+        if(table.decodeValue(in) != PSEUDO_EOF) {
+            throw new IOException("Something is wrong with a block in the compressed file.");
+        }
+        return block;
+    }
+
+    /**
+     * makes the canonical code for a block from the frequencies of its bytes
+     * @param block, the bytes of the block
+     * @param length, the number of bytes in the block
+     * @param freqs, an array of ALPH_SIZE + 1 ints, set to the frequencies with PSEUDO_EOF
+     * @return the canonical code for the block
+     */
+    private static CanonicalHuffmanCode makeCode(byte[] block, int length, int[] freqs) {
+        FrequencyCounter.count(block, 0, length, freqs);
+        freqs[PSEUDO_EOF] = 1;
+        return CanonicalHuffmanCode.fromFrequencies(freqs, CanonicalHuffmanCode.MAX_CODE_LENGTH);
+    }
+
+    /**
+     * finds the number of bytes of compressed data a block has if it is Huffman coded
+     * @param code, the code for the block
+     * @param freqs, the frequencies of the block's values, with PSEUDO_EOF
+     * @return the number of bytes of the code header and codes, padded to a byte
+     */
+    private static long huffmanPayloadBytes(CanonicalHuffmanCode code, int[] freqs) {
+        byte[] codeLengths = code.getCodeLengths();
+        long bits = code.headerBits();
+        for(int x = 0; x <= ALPH_SIZE; x++) {
+            bits += (long) freqs[x] * codeLengths[x];
+        }
+        return (bits + BITS_PER_BYTE - 1) / BITS_PER_BYTE;
+    }
+
+    /**
+     * compresses one block, with its block header. The block is stored instead if coding it
+     * would not make it smaller.
+     * @param block, the bytes of the block
+     * @param length, the number of bytes in the block
+     * @param burrowsWheeler, true to also try the block as a BWT_BLOCK
+     * @return the block header and compressed data
+     */
+    private static byte[] encodeBlock(byte[] block, int length, boolean burrowsWheeler) {
+        int[] freqs = new int[ALPH_SIZE + 1];
+        CanonicalHuffmanCode code = makeCode(block, length, freqs);
+        long huffmanBytes = huffmanPayloadBytes(code, freqs);
+        if(burrowsWheeler) {
+            BurrowsWheelerCode transformed = BurrowsWheelerCode.fromBlock(block, length);
+            if(bwtPayloadBytes(transformed) < Math.min(huffmanBytes, length)) {
+                return bwtBlock(transformed, length);
+            }
+        }
+        if(huffmanBytes >= length) {
+            return storeBlock(block, length);
+        }
+        int[] codes = code.getCodes();
+        byte[] codeLengths = code.getCodeLengths();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 2 + BLOCK_HEADER_BYTES);
+        BitOutputStream out = new BlockBitOutputStream(bytes);
+        out.writeBits(BITS_PER_BYTE, HUFFMAN_BLOCK);
+        out.writeBits(BITS_PER_INT, length);
+        out.writeBits(BITS_PER_INT, 0); //compressed length, filled in once it is known
+        code.write(out);
+        for(int x = 0; x < length; x++) {
+            int value = block[x] & 0xff;
+            out.writeBits(codeLengths[value], codes[value]);
+        }
+        out.writeBits(codeLengths[PSEUDO_EOF], codes[PSEUDO_EOF]);
+        out.flush();
+        return fillPayloadLength(bytes.toByteArray());
+    }
+
+    /**
+     * makes a BWT_BLOCK, with its block header
+     * @param transformed, the block transformed by BurrowsWheelerCode
+     * @param length, the number of bytes in the block
+     * @return the block header and compressed data
+     */
+    private static byte[] bwtBlock(BurrowsWheelerCode transformed, int length) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 4 + BLOCK_HEADER_BYTES);
+        BitOutputStream out = new BlockBitOutputStream(bytes);
+        out.writeBits(BITS_PER_BYTE, BWT_BLOCK);
+        out.writeBits(BITS_PER_INT, length);
+        out.writeBits(BITS_PER_INT, 0); //compressed length, filled in once it is known
+        transformed.write(out);
+        out.flush();
+        return fillPayloadLength(bytes.toByteArray());
+    }
+
+    /**
+     * finds the number of bytes of compressed data a BWT_BLOCK has
+     * @param transformed, the block transformed by BurrowsWheelerCode
+     * @return the number of bytes written by BurrowsWheelerCode.write, padded to a byte
+     */
+    private static long bwtPayloadBytes(BurrowsWheelerCode transformed) {
+        return (transformed.payloadBits() + BITS_PER_BYTE - 1) / BITS_PER_BYTE;
+    }
+
+    /**
+     * puts the number of bytes of compressed data in the block header of a coded block
+     * @param result, the block header and compressed data
+     * @return result
+     */
+    private static byte[] fillPayloadLength(byte[] result) {
+        int payloadLength = result.length - BLOCK_HEADER_BYTES;
+        for(int x = 0; x < Integer.BYTES; x++) {
+            result[BLOCK_HEADER_BYTES - 1 - x] = (byte) (payloadLength >>> (BITS_PER_BYTE * x));
+        }
+        return result;
+    }
+
+    /**
+     * makes a stored block, with its block header
+     * @param block, the bytes of the block
+     * @param length, the number of bytes in the block
+     * @return the block header and the bytes of the block
+     */
+    private static byte[] storeBlock(byte[] block, int length) {
+        ByteBuffer result = ByteBuffer.allocate(BLOCK_HEADER_BYTES + length);
+        result.put((byte) STORED_BLOCK).putInt(length).putInt(length).put(block, 0, length);
+        return result.array();
+    }
+
+    /**
+     * finds the number of bits encodeBlock would return for a block
+     * @param block, the bytes of the block
+     * @param length, the number of bytes in the block
+     * @param burrowsWheeler, true to also try the block as a BWT_BLOCK
+     * @return the number of bits in the block header and compressed data
+     */
+    private static long blockBits(byte[] block, int length, boolean burrowsWheeler) {
+        int[] freqs = new int[ALPH_SIZE + 1];
+        CanonicalHuffmanCode code = makeCode(block, length, freqs);
+        long payloadBytes = Math.min(huffmanPayloadBytes(code, freqs), length);
+        if(burrowsWheeler) {
+            payloadBytes = Math.min(payloadBytes,
+                    bwtPayloadBytes(BurrowsWheelerCode.fromBlock(block, length)));
+        }
+        return (BLOCK_HEADER_BYTES + payloadBytes) * BITS_PER_BYTE;
+    }
+
+    /**
+     * waits for a block to be decoded, passing on a problem with the compressed data as an
+     * IOException
+     * @param task, the task decoding the block
+     * @return the decoded block
+     * @throws IOException if the block's compressed data is not valid
+     */
+    private static byte[] joinDecoded(ForkJoinTask<byte[]> task) throws IOException {
+        try {
+            return task.join();
+        }
+        catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * the number of blocks to read ahead of the one being written, enough to keep every thread
+     * of the pool busy
+     * @return the most blocks in flight at once
+     */
+    private int maxInFlight() {
+        return pool.getParallelism() * BLOCKS_IN_FLIGHT_PER_THREAD;
+    }
+
+    /**
+     * gets the number of bytes in the index and the index size after it
+     * @param numBlocks, the number of blocks
+     * @return the number of bytes after END_OF_BLOCKS
+     */
+    private static long indexBytes(long numBlocks) {
+        return (BITS_PER_INT + numBlocks * BITS_PER_LONG + BITS_PER_INT) / BITS_PER_BYTE;
+    }
+
+    /**
+     * writes a compressed block
+     * @param out, the stream to write to
+     * @param block, the block header and compressed data
+     * @return the number of bytes written
+     * @throws IOException if out can't be written
+     */
+    private static int writeBlock(OutputStream out, byte[] block) throws IOException {
+        out.write(block);
+        return block.length;
+    }
+
+    /**
+     * writes an int most significant byte first
+     * @param out, the stream to write to
+     * @param value, the int to write
+     * @throws IOException if out can't be written
+     */
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        for(int shift = BITS_PER_INT - BITS_PER_BYTE; shift >= 0; shift -= BITS_PER_BYTE) {
+            out.write(value >>> shift);
+        }
+    }
+
+    /**
+     * reads until block is full or in runs out
+     * @param in, the stream to read
+     * @param block, the array to read into
+     * @return the number of bytes read, 0 if in had none left
+     * @throws IOException if in can't be read
+     */
+    private static int readBlock(InputStream in, byte[] block) throws IOException {
+        int length = 0;
+        int numRead = 0;
+        while(length < block.length && numRead != -1) {
+            numRead = in.read(block, length, block.length - length);
+            length += Math.max(numRead, 0);
+        }
+        return length;
+    }
+
+    /**
+     * reads exactly enough bytes to fill bytes
+     * @param in, the stream to read
+     * @param bytes, the array to fill
+     * @throws IOException if in ends first
+     */
+    private static void readFully(InputStream in, byte[] bytes) throws IOException {
+        if(readBlock(in, bytes) != bytes.length) {
+            throw new IOException("Compressed file ended in the middle of a block.");
+        }
+    }
+
+    /**
+     * reads bits, checking that they were there
+     * @param in, the stream to read
+     * @param howManyBits, the number of bits to read
+     * @return the bits read
+     * @throws IOException if in ends first
+     */
+    private static int readChecked(BlockBitInputStream in, int howManyBits) throws IOException {
+        int bits = in.peekBits(howManyBits);
+        if(!in.skipBits(howManyBits)) {
+            throw new IOException("Compressed file ended in the middle of a block.");
+        }
+        return bits;
+    }
+
+    /**
+     * gets the bytes of a compressed file a part at a time by their offset in the file, so a
+     * file can be read without holding all of it in one ByteBuffer
+     */
+    private abstract static class CompressedFile {
+
+        /**
+         * gets the number of bytes in the file
+         * @return the length of the file
+         */
+        abstract long length();
+
+        /**
+         * gets part of the file
+         * @param position, the offset in the file of the first byte
+         * @param size, the number of bytes
+         * @return a buffer holding the bytes from position 0 to its limit
+         * @throws IOException if the bytes can't be read
+         */
+        abstract ByteBuffer get(long position, int size) throws IOException;
+    }
+
+    /**
+     * compresses one block on a pool thread
+     */
+    private static class EncodeTask extends RecursiveTask<byte[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private byte[] block;
+        private int length;
+        private boolean burrowsWheeler;
+
+        private EncodeTask(byte[] block, int length, boolean burrowsWheeler) {
+            this.block = block;
+            this.length = length;
+            this.burrowsWheeler = burrowsWheeler;
+        }
+
+        protected byte[] compute() {
+            return encodeBlock(block, length, burrowsWheeler);
+        }
+    }
+
+    /**
+     * decodes one block on a pool thread
+     */
+    private static class DecodeTask extends RecursiveTask<byte[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private int type;
+        private int length;
+        private ByteBuffer payload;
+
+        private DecodeTask(int type, int length, ByteBuffer payload) {
+            this.type = type;
+            this.length = length;
+            this.payload = payload;
+        }
+
+        protected byte[] compute() {
+            if(length < 0 || length > MAX_BLOCK_SIZE) {
+                throw new UncheckedIOException(new IOException("Something is wrong with a "
+                        + "block in the compressed file."));
+            }
+            try {
+                return decodeBlock(type, payload, length);
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * measures one compressed block on a pool thread
+     */
+    private static class MeasureTask extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private byte[] block;
+        private int length;
+        private boolean burrowsWheeler;
+
+        private MeasureTask(byte[] block, int length, boolean burrowsWheeler) {
+            this.block = block;
+            this.length = length;
+            this.burrowsWheeler = burrowsWheeler;
+        }
+
+        protected Long compute() {
+            return blockBits(block, length, burrowsWheeler);
+        }
+    }
+}
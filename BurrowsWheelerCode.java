@@ -0,0 +1,439 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * One block of the STORE_BWT format, transformed the way bzip2 does it before it is Huffman
+ * coded. The block is put through a Burrows-Wheeler transform, which sorts its bytes by the
+ * bytes after them so bytes that are seen in the same place end up together, then a
+ * move-to-front pass, which turns those groups into mostly small numbers and runs of 0, then the
+ * runs of 0 are coded with two run symbols. What is left has far fewer distinct values than the
+ * block, so one canonical code per block does much better on text than a code for the bytes.
+ * <P>
+ * The transform sorts the suffixes of the block with an end marker after it, using the SA-IS
+ * algorithm, which takes time linear in the length of the block. The row the end marker is in
+ * is stored so the transform can be undone; the marker itself is not.
+ * <P>
+ * The alphabet coded is RUN_A and RUN_B, which give the length of a run of 0s as a number in
+ * bijective base 2 with RUN_A as the digit 1 and RUN_B as the digit 2, least significant digit
+ * first, then the move-to-front values 1 to 255 as 2 to 256, then END_OF_BLOCK. The coded block
+ * is the row of the end marker, 32 bits, the code, stored with CanonicalHuffmanCode.write, then
+ * the codes of the symbols and END_OF_BLOCK.
+ */
+public class BurrowsWheelerCode implements IHuffConstants {
+
+    private static final int RUN_A = 0;
+    private static final int RUN_B = 1;
+    private static final int END_OF_BLOCK = ALPH_SIZE + 1;
+    private static final int NUM_SYMBOLS = END_OF_BLOCK + 1;
+    private static final int EMPTY = -1;
+
+    private int endRow;
+    private short[] symbols;
+    private int numSymbols;
+    private long[] freqs;
+    private CanonicalHuffmanCode code;
+
+    private BurrowsWheelerCode(int endRow, short[] symbols, int numSymbols, long[] freqs) {
+        this.endRow = endRow;
+        this.symbols = symbols;
+        this.numSymbols = numSymbols;
+        this.freqs = freqs;
+        code = CanonicalHuffmanCode.fromFrequencies(freqs, CanonicalHuffmanCode.MAX_CODE_LENGTH);
+    }
+
+    /**
+     * transforms a block and makes the code for it
+     * pre: block != null, 0 < length <= block.length
+     * post: none
+     * @param block, the bytes of the block
+     * @param length, the number of bytes in the block
+     * @return the transformed block
+     */
+    public static BurrowsWheelerCode fromBlock(byte[] block, int length) {
+        byte[] last = new byte[length];
+        int endRow = transform(block, length, last);
+
+        //move-to-front, with the runs of 0 it makes coded as RUN_A and RUN_B
+        short[] symbols = new short[length + 1];
+        long[] freqs = new long[NUM_SYMBOLS];
+        byte[] order = new byte[ALPH_SIZE];
+        for(int x = 0; x < ALPH_SIZE; x++) {
+            order[x] = (byte) x;
+        }
+        int numSymbols = 0;
+        int zeros = 0;
+        for(int x = 0; x < length; x++) {
+            byte value = last[x];
+            if(order[0] == value) {
+                zeros++;
+                continue;
+            }
+            numSymbols = addRun(symbols, numSymbols, freqs, zeros);
+            zeros = 0;
+            byte moved = order[0];
+            int index = 1;
+            while(order[index] != value) {
+                byte next = order[index];
+                order[index++] = moved;
+                moved = next;
+            }
+            order[index] = moved;
+            order[0] = value;
+            symbols[numSymbols++] = (short) (index + 1);
+            freqs[index + 1]++;
+        }
+        numSymbols = addRun(symbols, numSymbols, freqs, zeros);
+        symbols[numSymbols++] = END_OF_BLOCK;
+        freqs[END_OF_BLOCK]++;
+        return new BurrowsWheelerCode(endRow, symbols, numSymbols, freqs);
+    }
+
+    /**
+     * adds the symbols for a run of 0s, which are never more than the 0s
+     * @param symbols, the symbols so far
+     * @param numSymbols, the number of symbols so far
+     * @param freqs, the frequency of each symbol so far
+     * @param zeros, the length of the run
+     * @return the number of symbols with the run added
+     */
+    private static int addRun(short[] symbols, int numSymbols, long[] freqs, int zeros) {
+        while(zeros > 0) {
+            int symbol = (zeros & 1) == 1 ? RUN_A : RUN_B;
+            symbols[numSymbols++] = (short) symbol;
+            freqs[symbol]++;
+            zeros = (zeros - 1) >>> 1;
+        }
+        return numSymbols;
+    }
+
+    /**
+     * gets the number of bits write will write
+     * pre: none
+     * post: none
+     * @return the number of bits of the end row, the code and the codes of the symbols
+     */
+    public long payloadBits() {
+        byte[] codeLengths = code.getCodeLengths();
+        long bits = BITS_PER_INT + code.headerBits();
+        for(int symbol = 0; symbol < NUM_SYMBOLS; symbol++) {
+            bits += freqs[symbol] * codeLengths[symbol];
+        }
+        return bits;
+    }
+
+    /**
+     * writes the transformed block
+     * pre: out != null
+     * post: the block has been written to out
+     * @param out, a BitOutputStream
+     */
+    public void write(BitOutputStream out) {
+        int[] codes = code.getCodes();
+        byte[] codeLengths = code.getCodeLengths();
+        out.writeBits(BITS_PER_INT, endRow);
+        code.write(out);
+        for(int x = 0; x < numSymbols; x++) {
+            int symbol = symbols[x];
+            out.writeBits(codeLengths[symbol], codes[symbol]);
+        }
+    }
+
+    /**
+     * reads a block written by write and undoes the transform
+     * pre: in != null
+     * post: the block has been read from in
+     * @param in, a BlockBitInputStream positioned at the start of the block
+     * @param length, the number of bytes in the block
+     * @return the bytes of the block
+     * @throws IOException if the block is not valid or in can't be read
+     */
+    public static byte[] decode(BlockBitInputStream in, int length) throws IOException {
+        int endRow = in.readBits(BITS_PER_INT);
+        if(endRow < 1 || endRow > length) {
+            throw new IOException("Something is wrong with a block in the compressed file.");
+        }
+        CanonicalHuffmanCode code = CanonicalHuffmanCode.read(in, NUM_SYMBOLS);
+        HuffmanDecodeTable table = new HuffmanDecodeTable(code.getCodes(), code.getCodeLengths());
+
+        //undo the runs of 0 and move-to-front
+        byte[] last = new byte[length];
+        byte[] order = new byte[ALPH_SIZE];
+        for(int x = 0; x < ALPH_SIZE; x++) {
+            order[x] = (byte) x;
+        }
+        int size = 0;
+        long zeros = 0;
+        int runDigit = 1;
+        int symbol = table.decodeValue(in);
+        while(symbol != END_OF_BLOCK) {
+            if(symbol == -1) {
+                throw new IOException("Compressed file ended in the middle of a block.");
+            }
+            if(symbol <= RUN_B) {
+                if(runDigit > length) {
+                    throw new IOException("Something is wrong with a block in the compressed "
+                            + "file.");
+                }
+                zeros += (long) runDigit << symbol;
+                runDigit <<= 1;
+            }
+            else {
+                size = addZeros(last, size, zeros, order[0]);
+                zeros = 0;
+                runDigit = 1;
+                if(size == length) {
+                    throw new IOException("Something is wrong with a block in the compressed "
+                            + "file.");
+                }
+                int index = symbol - 1;
+                byte value = order[index];
+                System.arraycopy(order, 0, order, 1, index);
+                order[0] = value;
+                last[size++] = value;
+            }
+            symbol = table.decodeValue(in);
+        }
+        size = addZeros(last, size, zeros, order[0]);
+        if(size != length) {
+            throw new IOException("Something is wrong with a block in the compressed file.");
+        }
+        return inverse(last, length, endRow);
+    }
+
+    private static int addZeros(byte[] last, int size, long zeros, byte value)
+            throws IOException {
+        if(zeros > last.length - size) {
+            throw new IOException("Something is wrong with a block in the compressed file.");
+        }
+        for(int x = 0; x < zeros; x++) {
+            last[size++] = value;
+        }
+        return size;
+    }
+
+    /**
+     * finds the Burrows-Wheeler transform of a block with an end marker, smaller than every
+     * byte, after it. The sorted rotations are the suffixes of the block and marker in order.
+     * pre: 0 < length <= block.length, last.length >= length
+     * post: last holds the last column of the sorted rotations, without the marker
+     * @param block, the bytes of the block
+     * @param length, the number of bytes in the block
+     * @param last, the array the last column is put in
+     * @return the row the end marker is in, from 1 to length
+     */
+    static int transform(byte[] block, int length, byte[] last) {
+        int n = length + 1;
+        int[] s = new int[n];
+        for(int x = 0; x < length; x++) {
+            s[x] = (block[x] & 0xff) + 1;
+        }
+        int[] suffixes = new int[n];
+        suffixArray(s, suffixes, n, ALPH_SIZE + 1);
+        int endRow = 0;
+        int size = 0;
+        for(int row = 0; row < n; row++) {
+            if(suffixes[row] == 0) {
+                endRow = row;
+            }
+            else {
+                last[size++] = (byte) (s[suffixes[row] - 1] - 1);
+            }
+        }
+        return endRow;
+    }
+
+    /**
+     * undoes transform. The byte before the one at the start of a row is at the start of the
+     * row its rotation sorts to, which the number of smaller bytes and earlier copies of the same
+     * byte give, so the block is rebuilt from the back.
+     * @param last, the last column, without the end marker
+     * @param length, the number of bytes in the block
+     * @param endRow, the row of the end marker
+     * @return the block
+     * @throws IOException if the transform can't be undone
+     */
+    private static byte[] inverse(byte[] last, int length, int endRow) throws IOException {
+        int[] firstRow = new int[ALPH_SIZE];
+        for(int x = 0; x < length; x++) {
+            firstRow[last[x] & 0xff]++;
+        }
+        int total = 1; //the end marker sorts first
+        for(int value = 0; value < ALPH_SIZE; value++) {
+            int count = firstRow[value];
+            firstRow[value] = total;
+            total += count;
+        }
+
+        //next[row] is the row that starts with the byte at the end of row
+        int[] next = new int[length + 1];
+        for(int row = 0; row <= length; row++) {
+            if(row != endRow) {
+                int value = last[row < endRow ? row : row - 1] & 0xff;
+                next[row] = firstRow[value]++;
+            }
+        }
+        byte[] block = new byte[length];
+        int row = 0;
+        for(int x = length - 1; x >= 0; x--) {
+            if(row == endRow) {
+                throw new IOException("Something is wrong with a block in the compressed file.");
+            }
+            block[x] = last[row < endRow ? row : row - 1];
+            row = next[row];
+        }
+        return block;
+    }
+
+    /**
+     * sorts the suffixes of s with SA-IS, in time linear in n. Suffixes are split into S-type,
+     * smaller than the suffix after them, and L-type. Sorting the LMS suffixes, the S-type
+     * suffixes right after an L-type one, is enough to induce the order of all the others, and
+     * the LMS suffixes are sorted by naming the pieces between them and sorting the string of
+     * names the same way.
+     * pre: s[n - 1] == 0 and every other value of s is between 1 and k - 1
+     * post: none
+     * @param s, the string
+     * @param suffixes, filled with the start of each suffix in sorted order
+     * @param n, the length of s
+     * @param k, the number of different values s can have
+     */
+    static void suffixArray(int[] s, int[] suffixes, int n, int k) {
+        if(n == 1) {
+            suffixes[0] = 0;
+            return;
+        }
+        boolean[] sType = new boolean[n];
+        sType[n - 1] = true;
+        for(int x = n - 2; x >= 0; x--) {
+            sType[x] = s[x] < s[x + 1] || (s[x] == s[x + 1] && sType[x + 1]);
+        }
+
+        //sort the LMS substrings by inducing from LMS suffixes at the ends of their buckets
+        int[] buckets = new int[k];
+        bucketEnds(s, n, buckets);
+        Arrays.fill(suffixes, 0, n, EMPTY);
+        for(int x = 1; x < n; x++) {
+            if(isLms(sType, x)) {
+                suffixes[--buckets[s[x]]] = x;
+            }
+        }
+        induce(s, suffixes, n, sType, buckets);
+
+        //name the LMS substrings in sorted order, equal substrings get the same name
+        int numLms = 0;
+        for(int x = 0; x < n; x++) {
+            if(isLms(sType, suffixes[x])) {
+                suffixes[numLms++] = suffixes[x];
+            }
+        }
+        Arrays.fill(suffixes, numLms, n, EMPTY);
+        int name = 0;
+        int previous = EMPTY;
+        for(int x = 0; x < numLms; x++) {
+            int pos = suffixes[x];
+            if(previous == EMPTY || !sameLmsSubstring(s, sType, pos, previous)) {
+                name++;
+                previous = pos;
+            }
+            suffixes[numLms + pos / 2] = name - 1; //LMS positions are at least 2 apart
+        }
+        int[] reduced = new int[numLms];
+        int size = numLms;
+        for(int x = n - 1; x >= numLms; x--) {
+            if(suffixes[x] != EMPTY) {
+                reduced[--size] = suffixes[x];
+            }
+        }
+
+        //sort the LMS suffixes by sorting the string of names
+        int[] reducedSuffixes = new int[numLms];
+        if(name < numLms) {
+            suffixArray(reduced, reducedSuffixes, numLms, name);
+        }
+        else {
+            for(int x = 0; x < numLms; x++) {
+                reducedSuffixes[reduced[x]] = x;
+            }
+        }
+
+        //put the sorted LMS suffixes at the ends of their buckets and induce the rest
+        size = 0;
+        for(int x = 1; x < n; x++) {
+            if(isLms(sType, x)) {
+                reduced[size++] = x;
+            }
+        }
+        bucketEnds(s, n, buckets);
+        Arrays.fill(suffixes, 0, n, EMPTY);
+        for(int x = numLms - 1; x >= 0; x--) {
+            int pos = reduced[reducedSuffixes[x]];
+            suffixes[--buckets[s[pos]]] = pos;
+        }
+        induce(s, suffixes, n, sType, buckets);
+    }
+
+    /**
+     * fills in the L-type suffixes from the front of their buckets, then the S-type suffixes
+     * from the back, each from the suffix after it that is already in place
+     */
+    private static void induce(int[] s, int[] suffixes, int n, boolean[] sType, int[] buckets) {
+        bucketStarts(s, n, buckets);
+        for(int x = 0; x < n; x++) {
+            int before = suffixes[x] - 1;
+            if(before >= 0 && !sType[before]) {
+                suffixes[buckets[s[before]]++] = before;
+            }
+        }
+        bucketEnds(s, n, buckets);
+        for(int x = n - 1; x >= 0; x--) {
+            int before = suffixes[x] - 1;
+            if(before >= 0 && sType[before]) {
+                suffixes[--buckets[s[before]]] = before;
+            }
+        }
+    }
+
+    private static boolean isLms(boolean[] sType, int pos) {
+        return pos > 0 && sType[pos] && !sType[pos - 1];
+    }
+
+    /**
+     * checks if the LMS substrings at two LMS positions are the same, values and types
+     */
+    private static boolean sameLmsSubstring(int[] s, boolean[] sType, int pos1, int pos2) {
+        for(int x = 0; ; x++) {
+            if(s[pos1 + x] != s[pos2 + x] || sType[pos1 + x] != sType[pos2 + x]) {
+                return false;
+            }
+            if(x > 0 && (isLms(sType, pos1 + x) || isLms(sType, pos2 + x))) {
+                return isLms(sType, pos1 + x) && isLms(sType, pos2 + x);
+            }
+        }
+    }
+
+    private static void bucketStarts(int[] s, int n, int[] buckets) {
+        bucketCounts(s, n, buckets);
+        int total = 0;
+        for(int x = 0; x < buckets.length; x++) {
+            int count = buckets[x];
+            buckets[x] = total;
+            total += count;
+        }
+    }
+
+    private static void bucketEnds(int[] s, int n, int[] buckets) {
+        bucketCounts(s, n, buckets);
+        int total = 0;
+        for(int x = 0; x < buckets.length; x++) {
+            total += buckets[x];
+            buckets[x] = total;
+        }
+    }
+
+    private static void bucketCounts(int[] s, int n, int[] buckets) {
+        Arrays.fill(buckets, 0);
+        for(int x = 0; x < n; x++) {
+            buckets[s[x]]++;
+        }
+    }
+}
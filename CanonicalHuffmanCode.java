@@ -0,0 +1,348 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A canonical Huffman code: a code that is fully described by the code length of each value.
+ * Codes of the same length are consecutive binary numbers in order of value, and shorter codes
+ * come before longer ones, so a header only needs to store the code lengths.
+ * <P>
+ * The code lengths are stored the way DEFLATE stores them. The lengths are run-length coded with
+ * an alphabet of 19 length codes: 0 to 15 for a single length, 16 to repeat the previous length
+ * 3 to 6 times, 17 for 3 to 10 zeros and 18 for 11 to 138 zeros. The length codes are Huffman
+ * coded themselves, and that code's lengths are stored first, 3 bits each.
+ */
+public class CanonicalHuffmanCode {
+
+    /**
+     * The longest code length that can be stored in a header.
+     */
+    public static final int MAX_CODE_LENGTH = 15;
+
+    private static final int MAX_LENGTH_CODE_LENGTH = 7;
+    private static final int BITS_PER_LENGTH_CODE_LENGTH = 3;
+    private static final int NUM_LENGTH_CODES = 19;
+    private static final int MIN_LENGTH_CODES_STORED = 4;
+    private static final int BITS_PER_NUM_LENGTH_CODES = 4;
+    private static final int REPEAT_PREVIOUS = 16;
+    private static final int REPEAT_ZERO = 17;
+    private static final int REPEAT_ZERO_LONG = 18;
+    private static final int[] EXTRA_BITS = {2, 3, 7};
+    private static final int[] MIN_REPEAT = {3, 3, 11};
+    private static final int[] MAX_REPEAT = {6, 10, 138};
+
+    //length codes in the order their lengths are stored, the ones least likely to be used last
+    private static final int[] LENGTH_CODE_ORDER =
+        {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private int[] codes;
+    private byte[] codeLengths;
+    private int maxCodeLength;
+
+    /**
+     * makes the canonical code for a set of code lengths.
+     * pre: codeLengths != null, every length is between 0 and BITS_PER_INT, and the lengths are
+     * not too short to make a prefix code
+     * post: none
+     * @param codeLengths, the number of bits in the code of each value, 0 for unused values
+     */
+    public CanonicalHuffmanCode(byte[] codeLengths) {
+        this.codeLengths = codeLengths.clone();
+        codes = new int[codeLengths.length];
+        int[] numWithLength = new int[IHuffConstants.BITS_PER_INT + 1];
+        for(int len : codeLengths) {
+            if(len < 0 || len > IHuffConstants.BITS_PER_INT) {
+                throw new IllegalArgumentException("Violation of precondition: "
+                        + "CanonicalHuffmanCode. Code length out of range: " + len);
+            }
+            numWithLength[len]++;
+            maxCodeLength = Math.max(maxCodeLength, len);
+        }
+
+        //the first code of each length follows the last code of the length before it
+        numWithLength[0] = 0;
+        long[] nextCode = new long[maxCodeLength + 1];
+        long code = 0;
+        for(int len = 1; len <= maxCodeLength; len++) {
+            code = (code + numWithLength[len - 1]) << 1;
+            nextCode[len] = code;
+            if(code + numWithLength[len] > (1L << len)) {
+                throw new IllegalArgumentException("Violation of precondition: "
+                        + "CanonicalHuffmanCode. Code lengths do not make a prefix code.");
+            }
+        }
+        for(int x = 0; x < codeLengths.length; x++) {
+            if(codeLengths[x] > 0) {
+                codes[x] = (int) nextCode[codeLengths[x]]++;
+            }
+        }
+    }
+
+    /**
+     * makes the canonical code for a set of frequencies with no code longer than maxCodeLength.
+     * If only one value is used it gets a 1 bit code so it can still be written and read.
+     * pre: freqs != null, no frequency is negative, 1 <= maxCodeLength <= BITS_PER_INT and
+     * 2^maxCodeLength is at least the number of used values
+     * post: none
+     * @param freqs, the frequency of each value, 0 for unused values
+     * @param maxCodeLength, the longest code length allowed
+     * @return the canonical code for freqs
+     */
+    public static CanonicalHuffmanCode fromFrequencies(int[] freqs, int maxCodeLength) {
+        return fromFrequencies(Arrays.stream(freqs).asLongStream().toArray(), maxCodeLength);
+    }
+
+    /**
+     * makes the canonical code for a set of frequencies too large for an int. See
+     * fromFrequencies(int[], int).
+     * pre: freqs != null, no frequency is negative, 1 <= maxCodeLength <= BITS_PER_INT and
+     * 2^maxCodeLength is at least the number of used values
+     * post: none
+     * @param freqs, the frequency of each value, 0 for unused values
+     * @param maxCodeLength, the longest code length allowed
+     * @return the canonical code for freqs
+     */
+    public static CanonicalHuffmanCode fromFrequencies(long[] freqs, int maxCodeLength) {
+        byte[] lengths = HuffmanCodeBuilder.limitedCodeLengths(freqs, maxCodeLength);
+        int numUsed = 0;
+        int lastUsed = 0;
+        for(int x = 0; x < lengths.length; x++) {
+            if(freqs[x] > 0) {
+                numUsed++;
+                lastUsed = x;
+            }
+        }
+        if(numUsed == 1) {
+            lengths[lastUsed] = 1;
+        }
+        return new CanonicalHuffmanCode(lengths);
+    }
+
+    /**
+     * reads the code lengths written by write and makes the canonical code for them.
+     * pre: in != null
+     * post: the header has been read from in
+     * @param in, a BlockBitInputStream positioned at the start of the header
+     * @param numValues, the number of values in the code
+     * @return the canonical code in the header
+     * @throws IOException if the header is not valid or in can't be read
+     */
+    public static CanonicalHuffmanCode read(BlockBitInputStream in, int numValues)
+            throws IOException {
+
+        //lengths of the length code, in LENGTH_CODE_ORDER
+        int numStored = readChecked(in, BITS_PER_NUM_LENGTH_CODES) + MIN_LENGTH_CODES_STORED;
+        byte[] lengthCodeLengths = new byte[NUM_LENGTH_CODES];
+        for(int x = 0; x < numStored; x++) {
+            lengthCodeLengths[LENGTH_CODE_ORDER[x]] =
+                (byte) readChecked(in, BITS_PER_LENGTH_CODE_LENGTH);
+        }
+        CanonicalHuffmanCode lengthCode = makeCode(lengthCodeLengths);
+        HuffmanDecodeTable table = new HuffmanDecodeTable(lengthCode.codes, lengthCodeLengths);
+
+        //the code lengths themselves
+        byte[] lengths = new byte[numValues];
+        int pos = 0;
+        while(pos < numValues) {
+            int symbol = table.decodeValue(in);
+            if(symbol < 0) {
+                throw new IOException("Code length header ended early.");
+            }
+            if(symbol >= NUM_LENGTH_CODES) {
+                throw new IOException("Something is wrong with the code length header.");
+            }
+            if(symbol < REPEAT_PREVIOUS) {
+                lengths[pos++] = (byte) symbol;
+            }
+            else {
+                int kind = symbol - REPEAT_PREVIOUS;
+                int repeat = readChecked(in, EXTRA_BITS[kind]) + MIN_REPEAT[kind];
+                if((symbol == REPEAT_PREVIOUS && pos == 0) || pos + repeat > numValues) {
+                    throw new IOException("Something is wrong with the code length header.");
+                }
+                byte len = symbol == REPEAT_PREVIOUS ? lengths[pos - 1] : 0;
+                for(int x = 0; x < repeat; x++) {
+                    lengths[pos++] = len;
+                }
+            }
+        }
+        return makeCode(lengths);
+    }
+
+    /**
+     * makes the canonical code for lengths read from a header
+     * @param lengths, the code lengths read
+     * @return the canonical code
+     * @throws IOException if the lengths do not make a prefix code
+     */
+    private static CanonicalHuffmanCode makeCode(byte[] lengths) throws IOException {
+        try {
+            return new CanonicalHuffmanCode(lengths);
+        } catch(IllegalArgumentException e) {
+            throw new IOException("Code lengths in header do not make a prefix code.");
+        }
+    }
+
+    /**
+     * reads bits and checks that there were enough of them
+     * @param in, a BitInputStream
+     * @param howManyBits, the number of bits to read
+     * @return the bits read
+     * @throws IOException if in ends
+     */
+    private static int readChecked(BitInputStream in, int howManyBits) throws IOException {
+        int bits = in.readBits(howManyBits);
+        if(bits == -1) {
+            throw new IOException("Code length header ended early.");
+        }
+        return bits;
+    }
+
+    /**
+     * writes the code lengths of this code so read can make the same code.
+     * pre: out != null, no code is longer than MAX_CODE_LENGTH
+     * post: the header has been written to out
+     * @param out, a BitOutputStream
+     */
+    public void write(BitOutputStream out) {
+        int[] tokens = lengthTokens();
+        CanonicalHuffmanCode lengthCode = lengthCodeFor(tokens);
+        int numStored = numLengthCodesStored(lengthCode);
+        out.writeBits(BITS_PER_NUM_LENGTH_CODES, numStored - MIN_LENGTH_CODES_STORED);
+        for(int x = 0; x < numStored; x++) {
+            out.writeBits(BITS_PER_LENGTH_CODE_LENGTH,
+                    lengthCode.codeLengths[LENGTH_CODE_ORDER[x]]);
+        }
+        for(int token : tokens) {
+            int symbol = token & 0xff;
+            out.writeBits(lengthCode.codeLengths[symbol], lengthCode.codes[symbol]);
+            if(symbol >= REPEAT_PREVIOUS) {
+                out.writeBits(EXTRA_BITS[symbol - REPEAT_PREVIOUS], token >>> 8);
+            }
+        }
+    }
+
+    /**
+     * gets the number of bits write will write
+     * pre: no code is longer than MAX_CODE_LENGTH
+     * post: none
+     * @return the number of bits in the header for this code
+     */
+    public int headerBits() {
+        int[] tokens = lengthTokens();
+        CanonicalHuffmanCode lengthCode = lengthCodeFor(tokens);
+        int bits = BITS_PER_NUM_LENGTH_CODES
+                + numLengthCodesStored(lengthCode)*BITS_PER_LENGTH_CODE_LENGTH;
+        for(int token : tokens) {
+            int symbol = token & 0xff;
+            bits += lengthCode.codeLengths[symbol];
+            if(symbol >= REPEAT_PREVIOUS) {
+                bits += EXTRA_BITS[symbol - REPEAT_PREVIOUS];
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * run-length codes the code lengths. Each token has a length code in the low 8 bits and the
+     * value of its extra bits above them.
+     * @return the tokens for the code lengths
+     */
+    private int[] lengthTokens() {
+        if(maxCodeLength > MAX_CODE_LENGTH) {
+            throw new IllegalStateException("Code lengths over " + MAX_CODE_LENGTH
+                    + " bits can't be stored.");
+        }
+        int[] tokens = new int[codeLengths.length];
+        int numTokens = 0;
+        int pos = 0;
+        while(pos < codeLengths.length) {
+            int len = codeLengths[pos];
+            int run = 1;
+            while(pos + run < codeLengths.length && codeLengths[pos + run] == len) {
+                run++;
+            }
+            pos += run;
+            if(len != 0) {
+
+                //the first length is stored, the rest of the run repeats it
+                tokens[numTokens++] = len;
+                run--;
+            }
+            while(run >= MIN_REPEAT[0]) {
+                int symbol = REPEAT_PREVIOUS;
+                if(len == 0) {
+                    symbol = run >= MIN_REPEAT[REPEAT_ZERO_LONG - REPEAT_PREVIOUS]
+                            ? REPEAT_ZERO_LONG : REPEAT_ZERO;
+                }
+                int kind = symbol - REPEAT_PREVIOUS;
+                int repeat = Math.min(run, MAX_REPEAT[kind]);
+                tokens[numTokens++] = symbol | ((repeat - MIN_REPEAT[kind]) << 8);
+                run -= repeat;
+            }
+            for(int x = 0; x < run; x++) {
+                tokens[numTokens++] = len;
+            }
+        }
+        int[] result = new int[numTokens];
+        System.arraycopy(tokens, 0, result, 0, numTokens);
+        return result;
+    }
+
+    /**
+     * makes the code for the length codes used by tokens
+     * @param tokens, the run-length coded code lengths
+     * @return the canonical code for the length codes
+     */
+    private static CanonicalHuffmanCode lengthCodeFor(int[] tokens) {
+        int[] freqs = new int[NUM_LENGTH_CODES];
+        for(int token : tokens) {
+            freqs[token & 0xff]++;
+        }
+        return fromFrequencies(freqs, MAX_LENGTH_CODE_LENGTH);
+    }
+
+    /**
+     * gets how many length code lengths are stored, leaving off unused codes at the end of
+     * LENGTH_CODE_ORDER
+     * @param lengthCode, the code for the length codes
+     * @return the number of length code lengths stored
+     */
+    private static int numLengthCodesStored(CanonicalHuffmanCode lengthCode) {
+        int numStored = NUM_LENGTH_CODES;
+        while(numStored > MIN_LENGTH_CODES_STORED
+                && lengthCode.codeLengths[LENGTH_CODE_ORDER[numStored - 1]] == 0) {
+            numStored--;
+        }
+        return numStored;
+    }
+
+    /**
+     * gets the codes for each value. Only the rightmost codeLength bits of a code are valid.
+     * pre: none
+     * post: none
+     * @return an int array containing the code for each value
+     */
+    public int[] getCodes() {
+        return codes;
+    }
+
+    /**
+     * gets the code lengths for each value, 0 for unused values
+     * pre: none
+     * post: none
+     * @return a byte array containing the number of bits in the code for each value
+     */
+    public byte[] getCodeLengths() {
+        return codeLengths;
+    }
+
+    /**
+     * gets the length of the longest code
+     * pre: none
+     * post: none
+     * @return the number of bits in the longest code
+     */
+    public int getMaxCodeLength() {
+        return maxCodeLength;
+    }
+}
@@ -0,0 +1,377 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An order-1 context model for the STORE_CONTEXT format: each byte is coded with a code chosen
+ * by the byte before it, so data where a byte says a lot about the next one, like logs and CSV
+ * files, codes in fewer bits than with one code for everything. The byte before the first byte
+ * is taken to be 0.
+ * <P>
+ * A context only gets its own canonical code if the bits it saves are more than the bits it
+ * takes to store the code. Every other context, including the ones that are seen only a few
+ * times, uses one shared code made from the counts of all of them. The header is a bit for each
+ * context saying if it has its own code, the shared code, then the code of each context that
+ * has one, each stored with CanonicalHuffmanCode.write. There is no PSEUDO_EOF in these codes,
+ * the number of bytes is stored before the header instead.
+ * <P>
+ * Codes are looked up in arrays made once, so coding a byte does not allocate anything.
+ */
+public class ContextHuffmanCode implements IHuffConstants {
+
+    private static final int NUM_CONTEXTS = ALPH_SIZE;
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int DECISION_PASSES = 2;
+
+    private CanonicalHuffmanCode sharedCode;
+    private CanonicalHuffmanCode[] contextCodes;
+    private int[][] codes;
+    private byte[][] codeLengths;
+    private HuffmanDecodeTable[] decodeTables;
+
+    /**
+     * makes the model for a shared code and the codes of the contexts that have their own
+     * @param sharedCode, the code of contexts without their own code
+     * @param contextCodes, the code of each context, null for contexts that use the shared code
+     */
+    private ContextHuffmanCode(CanonicalHuffmanCode sharedCode,
+            CanonicalHuffmanCode[] contextCodes) {
+        this.sharedCode = sharedCode;
+        this.contextCodes = contextCodes;
+        codes = new int[NUM_CONTEXTS][];
+        codeLengths = new byte[NUM_CONTEXTS][];
+        for(int context = 0; context < NUM_CONTEXTS; context++) {
+            CanonicalHuffmanCode code = codeOf(context);
+            codes[context] = code.getCodes();
+            codeLengths[context] = code.getCodeLengths();
+        }
+    }
+
+    /**
+     * gets the code a context uses
+     * @param context, the byte before the byte being coded
+     * @return the context's own code, or the shared code
+     */
+    private CanonicalHuffmanCode codeOf(int context) {
+        return contextCodes[context] != null ? contextCodes[context] : sharedCode;
+    }
+
+    /**
+     * reads all of in and adds the number of times each byte follows each byte to counts. A
+     * MappedFileInputStream is read a mapped window at a time without copying.
+     * pre: in != null, counts is ALPH_SIZE by ALPH_SIZE
+     * post: all of in has been read
+     * @param in, the stream to count
+     * @param counts, counts[before][value] is the number of times value follows before
+     * @return the number of bytes read
+     * @throws IOException if in can't be read
+     */
+    public static long countPairs(InputStream in, long[][] counts) throws IOException {
+        long numBytes = 0;
+        int context = 0;
+        if(in instanceof MappedFileInputStream) {
+            MappedFileInputStream mapped = (MappedFileInputStream) in;
+            ByteBuffer window = mapped.nextWindow();
+            while(window != null) {
+                context = countPairs(window, counts, context);
+                numBytes += window.remaining();
+                window = mapped.nextWindow();
+            }
+            return numBytes;
+        }
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int numRead = in.read(chunk);
+        while(numRead != -1) {
+            context = countPairs(ByteBuffer.wrap(chunk, 0, numRead), counts, context);
+            numBytes += numRead;
+            numRead = in.read(chunk);
+        }
+        return numBytes;
+    }
+
+    /**
+     * counts the pairs of bytes between the position and limit of bytes
+     * @param bytes, the bytes to count
+     * @param counts, the counts to add to
+     * @param context, the byte before the first byte
+     * @return the last byte counted, the context of the next byte
+     */
+    private static int countPairs(ByteBuffer bytes, long[][] counts, int context) {
+        int end = bytes.limit();
+        for(int x = bytes.position(); x < end; x++) {
+            int value = bytes.get(x) & 0xff;
+            counts[context][value]++;
+            context = value;
+        }
+        return context;
+    }
+
+    /**
+     * makes the model for counts of pairs of bytes, deciding which contexts get their own code.
+     * The choice and the shared code depend on each other, so the contexts are decided with the
+     * shared code of the last pass, then the shared code is made again from the contexts that
+     * use it.
+     * pre: counts is ALPH_SIZE by ALPH_SIZE, no count is negative
+     * post: none
+     * @param counts, counts[before][value] is the number of times value follows before
+     * @return the model for counts
+     */
+    public static ContextHuffmanCode fromCounts(long[][] counts) {
+        long[] total = new long[ALPH_SIZE];
+        for(int context = 0; context < NUM_CONTEXTS; context++) {
+            add(total, counts[context]);
+        }
+        CanonicalHuffmanCode sharedCode = makeCode(total);
+        CanonicalHuffmanCode[] contextCodes = new CanonicalHuffmanCode[NUM_CONTEXTS];
+        for(int pass = 0; pass < DECISION_PASSES; pass++) {
+            long[] shared = new long[ALPH_SIZE];
+            for(int context = 0; context < NUM_CONTEXTS; context++) {
+                CanonicalHuffmanCode own = makeCode(counts[context]);
+                long ownBits = own.headerBits() + dataBits(own, counts[context]);
+                if(ownBits < dataBits(sharedCode, counts[context])) {
+                    contextCodes[context] = own;
+                }
+                else {
+                    contextCodes[context] = null;
+                    add(shared, counts[context]);
+                }
+            }
+            sharedCode = makeCode(shared);
+        }
+        return new ContextHuffmanCode(sharedCode, contextCodes);
+    }
+
+    /**
+     * adds counts to total
+     * @param total, the counts to add to
+     * @param counts, the counts to add
+     */
+    private static void add(long[] total, long[] counts) {
+        for(int value = 0; value < ALPH_SIZE; value++) {
+            total[value] += counts[value];
+        }
+    }
+
+    /**
+     * makes the canonical code for counts. If no value was counted, value 0 gets a code so
+     * there is still a valid code to store.
+     * @param counts, the number of times each value occurs
+     * @return the code for counts
+     */
+    private static CanonicalHuffmanCode makeCode(long[] counts) {
+        long[] freqs = counts.clone();
+        boolean any = false;
+        for(long count : freqs) {
+            any |= count > 0;
+        }
+        if(!any) {
+            freqs[0] = 1;
+        }
+        return CanonicalHuffmanCode.fromFrequencies(freqs, CanonicalHuffmanCode.MAX_CODE_LENGTH);
+    }
+
+    /**
+     * finds the number of bits it takes to code counts with code
+     * @param code, a code
+     * @param counts, the number of times each value occurs
+     * @return the number of bits, or Long.MAX_VALUE if a value that occurs has no code
+     */
+    private static long dataBits(CanonicalHuffmanCode code, long[] counts) {
+        byte[] lengths = code.getCodeLengths();
+        long bits = 0;
+        for(int value = 0; value < ALPH_SIZE; value++) {
+            if(counts[value] > 0) {
+                if(lengths[value] == 0) {
+                    return Long.MAX_VALUE;
+                }
+                bits += counts[value] * lengths[value];
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * finds the number of bits it takes to code the bytes counted with this model
+     * pre: counts is ALPH_SIZE by ALPH_SIZE and are the counts the model was made from
+     * post: none
+     * @param counts, counts[before][value] is the number of times value follows before
+     * @return the number of bits of the coded bytes, not counting the header
+     */
+    public long dataBits(long[][] counts) {
+        long bits = 0;
+        for(int context = 0; context < NUM_CONTEXTS; context++) {
+            bits += dataBits(codeOf(context), counts[context]);
+        }
+        return bits;
+    }
+
+    /**
+     * gets the number of bits write will write
+     * pre: none
+     * post: none
+     * @return the number of bits in the header for this model
+     */
+    public long headerBits() {
+        long bits = NUM_CONTEXTS + sharedCode.headerBits();
+        for(CanonicalHuffmanCode code : contextCodes) {
+            if(code != null) {
+                bits += code.headerBits();
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * gets the number of contexts with their own code
+     * pre: none
+     * post: none
+     * @return the number of contexts that don't use the shared code
+     */
+    public int getNumContextCodes() {
+        int num = 0;
+        for(CanonicalHuffmanCode code : contextCodes) {
+            num += code != null ? 1 : 0;
+        }
+        return num;
+    }
+
+    /**
+     * writes the header for this model so read can make the same model
+     * pre: out != null
+     * post: the header has been written to out
+     * @param out, a BitOutputStream
+     */
+    public void write(BitOutputStream out) {
+        for(CanonicalHuffmanCode code : contextCodes) {
+            out.writeBits(1, code != null ? 1 : 0);
+        }
+        sharedCode.write(out);
+        for(CanonicalHuffmanCode code : contextCodes) {
+            if(code != null) {
+                code.write(out);
+            }
+        }
+    }
+
+    /**
+     * reads a header written by write and makes the model, with the tables to decode it
+     * pre: in != null
+     * post: the header has been read from in
+     * @param in, a BlockBitInputStream positioned at the start of the header
+     * @return the model in the header
+     * @throws IOException if the header is not valid or in can't be read
+     */
+    public static ContextHuffmanCode read(BlockBitInputStream in) throws IOException {
+        boolean[] hasCode = new boolean[NUM_CONTEXTS];
+        for(int context = 0; context < NUM_CONTEXTS; context++) {
+            int bit = in.readBits(1);
+            if(bit == -1) {
+                throw new IOException("Context header ended early.");
+            }
+            hasCode[context] = bit == 1;
+        }
+        CanonicalHuffmanCode sharedCode = CanonicalHuffmanCode.read(in, ALPH_SIZE);
+        CanonicalHuffmanCode[] contextCodes = new CanonicalHuffmanCode[NUM_CONTEXTS];
+        for(int context = 0; context < NUM_CONTEXTS; context++) {
+            if(hasCode[context]) {
+                contextCodes[context] = CanonicalHuffmanCode.read(in, ALPH_SIZE);
+            }
+        }
+        ContextHuffmanCode model = new ContextHuffmanCode(sharedCode, contextCodes);
+        model.decodeTables = new HuffmanDecodeTable[NUM_CONTEXTS];
+        HuffmanDecodeTable sharedTable = new HuffmanDecodeTable(sharedCode.getCodes(),
+                sharedCode.getCodeLengths());
+        for(int context = 0; context < NUM_CONTEXTS; context++) {
+            model.decodeTables[context] = hasCode[context] ? new HuffmanDecodeTable(
+                    model.codes[context], model.codeLengths[context]) : sharedTable;
+        }
+        return model;
+    }
+
+    /**
+     * writes the code of every byte of in, each with the code of the byte before it
+     * pre: in != null, out != null, the model was made from the counts of in
+     * post: all of in has been read
+     * @param in, the stream to code
+     * @param out, the stream the codes are written to
+     * @return the number of bytes coded
+     * @throws IOException if in can't be read or has a pair of bytes that was not counted
+     */
+    public long encode(InputStream in, BitOutputStream out) throws IOException {
+        long numBytes = 0;
+        int context = 0;
+        if(in instanceof MappedFileInputStream) {
+            MappedFileInputStream mapped = (MappedFileInputStream) in;
+            ByteBuffer window = mapped.nextWindow();
+            while(window != null) {
+                context = encode(window, out, context);
+                numBytes += window.remaining();
+                window = mapped.nextWindow();
+            }
+            return numBytes;
+        }
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int numRead = in.read(chunk);
+        while(numRead != -1) {
+            context = encode(ByteBuffer.wrap(chunk, 0, numRead), out, context);
+            numBytes += numRead;
+            numRead = in.read(chunk);
+        }
+        return numBytes;
+    }
+
+    /**
+     * writes the code of every byte between the position and limit of bytes
+     * @param bytes, the bytes to code
+     * @param out, the stream the codes are written to
+     * @param context, the byte before the first byte
+     * @return the last byte coded, the context of the next byte
+     * @throws IOException if a byte has no code in its context
+     */
+    private int encode(ByteBuffer bytes, BitOutputStream out, int context) throws IOException {
+        int end = bytes.limit();
+        for(int x = bytes.position(); x < end; x++) {
+            int value = bytes.get(x) & 0xff;
+            int length = codeLengths[context][value];
+            if(length == 0) {
+                throw new IOException("The input is not the same as it was when counted.");
+            }
+            out.writeBits(length, codes[context][value]);
+            context = value;
+        }
+        return context;
+    }
+
+    /**
+     * decodes numBytes bytes from in and writes them to out
+     * pre: the model was made by read, in != null, out != null
+     * post: the codes have been read from in
+     * @param in, a BlockBitInputStream positioned at the start of the codes
+     * @param numBytes, the number of bytes to decode
+     * @param out, the stream the bytes are written to
+     * @throws IOException if a code is not valid, in ends early or a stream can't be used
+     */
+    public void decode(BlockBitInputStream in, long numBytes, OutputStream out)
+            throws IOException {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int context = 0;
+        long left = numBytes;
+        while(left > 0) {
+            int length = (int) Math.min(chunk.length, left);
+            for(int x = 0; x < length; x++) {
+                int value = decodeTables[context].decodeValue(in);
+                if(value < 0) {
+                    throw new IOException("The compressed file ended before all the data.");
+                }
+                if(value >= ALPH_SIZE) {
+                    throw new IOException("Something is wrong with the compressed data.");
+                }
+                chunk[x] = (byte) value;
+                context = value;
+            }
+            out.write(chunk, 0, length);
+            left -= length;
+        }
+    }
+}
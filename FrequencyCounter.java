@@ -0,0 +1,187 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts how many times each byte value occurs. Bytes are counted a whole array at a time
+ * instead of 8 bits at a time through a BitInputStream. Each run of bytes is counted into four
+ * histograms, one for each position mod 4, so increments of the same value that are close
+ * together don't wait on each other, then the histograms are added up.
+ * <P>
+ * Data in memory, including a memory mapped file, is split into pieces that are counted in
+ * parallel on a ForkJoinPool, each into its own histograms, and the counts are merged as the
+ * pieces finish. A MappedFileInputStream is counted a mapped window at a time in place, and any
+ * other stream is read a large chunk at a time and each chunk is counted the same way.
+ */
+public class FrequencyCounter implements IHuffConstants {
+
+    private static final int SPLIT_SIZE = 1 << 20;
+    private static final int READ_SIZE = 1 << 23;
+    private static final int COPY_SIZE = 1 << 16;
+
+    /**
+     * adds the frequency of each byte value in data[offset, offset + length) to freqs
+     * pre: data != null, freqs.length >= ALPH_SIZE, the range is in data
+     * post: freqs holds the counts it had plus the counts of the range
+     * @param data, the bytes to count
+     * @param offset, the index of the first byte to count
+     * @param length, the number of bytes to count
+     * @param freqs, the counts to add to
+     */
+    public static void count(byte[] data, int offset, int length, int[] freqs) {
+        int[] counts0 = new int[ALPH_SIZE];
+        int[] counts1 = new int[ALPH_SIZE];
+        int[] counts2 = new int[ALPH_SIZE];
+        int[] counts3 = new int[ALPH_SIZE];
+        int end = offset + length;
+        int x = offset;
+        for(int unrolledEnd = offset + (length & ~3); x < unrolledEnd; x += 4) {
+            counts0[data[x] & 0xff]++;
+            counts1[data[x + 1] & 0xff]++;
+            counts2[data[x + 2] & 0xff]++;
+            counts3[data[x + 3] & 0xff]++;
+        }
+        for(; x < end; x++) {
+            counts0[data[x] & 0xff]++;
+        }
+        for(int value = 0; value < ALPH_SIZE; value++) {
+            freqs[value] += counts0[value] + counts1[value] + counts2[value] + counts3[value];
+        }
+    }
+
+    /**
+     * counts the frequency of each byte value between the position and limit of data, in
+     * parallel on pool if there is enough data to split up
+     * pre: data != null, pool != null
+     * post: the position of data is not changed
+     * @param data, the bytes to count
+     * @param pool, the pool to count on
+     * @return an array of ALPH_SIZE ints holding the frequency of each byte value
+     */
+    public static int[] count(ByteBuffer data, ForkJoinPool pool) {
+        return pool.invoke(new CountTask(data, data.position(), data.limit()));
+    }
+
+    /**
+     * reads all of in and adds the frequency of each byte value to freqs. Each chunk read is
+     * counted in parallel on pool.
+     * pre: in != null, freqs.length >= ALPH_SIZE, pool != null
+     * post: all of in has been read
+     * @param in, the stream to count
+     * @param freqs, the counts to add to
+     * @param pool, the pool to count on
+     * @return the number of bytes read
+     * @throws IOException if in can't be read
+     */
+    public static long count(InputStream in, long[] freqs, ForkJoinPool pool) throws IOException {
+        if(in instanceof MappedFileInputStream) {
+            return count((MappedFileInputStream) in, freqs, pool);
+        }
+        byte[] chunk = new byte[READ_SIZE];
+        long numBytes = 0;
+        int length = readChunk(in, chunk);
+        while(length > 0) {
+            int[] counts = count(ByteBuffer.wrap(chunk, 0, length), pool);
+            for(int value = 0; value < ALPH_SIZE; value++) {
+                freqs[value] += counts[value];
+            }
+            numBytes += length;
+            length = readChunk(in, chunk);
+        }
+        return numBytes;
+    }
+
+    /**
+     * adds the frequency of each byte value left in a mapped file to freqs, counting each
+     * mapped window in place in parallel
+     * @param in, the file to count
+     * @param freqs, the counts to add to
+     * @param pool, the pool to count on
+     * @return the number of bytes counted
+     * @throws IOException if a window can't be mapped
+     */
+    private static long count(MappedFileInputStream in, long[] freqs, ForkJoinPool pool)
+            throws IOException {
+        long numBytes = 0;
+        ByteBuffer window = in.nextWindow();
+        while(window != null) {
+            int[] counts = count(window, pool);
+            for(int value = 0; value < ALPH_SIZE; value++) {
+                freqs[value] += counts[value];
+            }
+            numBytes += window.remaining();
+            window = in.nextWindow();
+        }
+        return numBytes;
+    }
+
+    /**
+     * reads until chunk is full or in runs out
+     * @param in, the stream to read
+     * @param chunk, the array to read into
+     * @return the number of bytes read, 0 if in had none left
+     * @throws IOException if in can't be read
+     */
+    private static int readChunk(InputStream in, byte[] chunk) throws IOException {
+        int length = 0;
+        int numRead = 0;
+        while(length < chunk.length && numRead != -1) {
+            numRead = in.read(chunk, length, chunk.length - length);
+            length += Math.max(numRead, 0);
+        }
+        return length;
+    }
+
+    /**
+     * counts part of a buffer, splitting it in half until the pieces are small enough
+     */
+    private static class CountTask extends RecursiveTask<int[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private ByteBuffer data;
+        private int start;
+        private int end;
+
+        private CountTask(ByteBuffer data, int start, int end) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+        }
+
+        protected int[] compute() {
+            if(end - start <= SPLIT_SIZE) {
+                return countRange();
+            }
+            int middle = start + (end - start) / 2;
+            CountTask left = new CountTask(data, start, middle);
+            left.fork();
+            int[] counts = new CountTask(data, middle, end).compute();
+            int[] leftCounts = left.join();
+            for(int value = 0; value < ALPH_SIZE; value++) {
+                counts[value] += leftCounts[value];
+            }
+            return counts;
+        }
+
+        /*
+         * count the range with one thread, copying it a piece at a time if it isn't in an array
+         */
+        private int[] countRange() {
+            int[] counts = new int[ALPH_SIZE];
+            if(data.hasArray()) {
+                count(data.array(), data.arrayOffset() + start, end - start, counts);
+                return counts;
+            }
+            byte[] copy = new byte[Math.min(COPY_SIZE, end - start)];
+            for(int pos = start; pos < end; pos += copy.length) {
+                int length = Math.min(copy.length, end - pos);
+                data.get(pos, copy, 0, length);
+                count(copy, 0, length, counts);
+            }
+            return counts;
+        }
+    }
+}
@@ -1,16 +1,15 @@
 import java.awt.BorderLayout;
 import java.awt.Font;
 import java.awt.event.ActionEvent;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 
 import javax.swing.AbstractAction;
 import javax.swing.BorderFactory;
@@ -44,6 +43,7 @@ public class GUIHuffViewer extends JFrame implements IHuffViewer {
 
     private static String HUFF_SUFFIX = ".hf";
     private static String UNHUFF_SUFFIX = ".unhf";   
+    private static final int MONITOR_WINDOW_SIZE = 1 << 24;
 
     private JTextArea myOutput;
     private IHuffProcessor myModel;
@@ -52,7 +52,6 @@ public class GUIHuffViewer extends JFrame implements IHuffViewer {
     private boolean myForce;
     private int myHeaderFormat;
     private Thread myFirstFileThread;
-    private boolean myFirstReadingDone;
 
     private static JFileChooser ourChooser = 
             new JFileChooser(System.getProperties().getProperty("user.dir"));
@@ -126,25 +125,22 @@ public class GUIHuffViewer extends JFrame implements IHuffViewer {
      */
     protected File doRead() {
         // Get the user choice for the file.
-        int retval = ourChooser.showOpenDialog(null);
-        if (retval != JFileChooser.APPROVE_OPTION) {
+        myFile = chooseFile();
+        if (myFile == null) {
             return null;
         }
         showMessage("reading/initializing");
-        myFile = ourChooser.getSelectedFile();
         
         // Create an input stream for the file and a progress monitor.
-        final ProgressMonitorInputStream pmis 
-            = getMonitorableStream(getFastByteReader(myFile), "counting/reading bits ...");
+        final MonitoredFileInputStream pmis 
+            = getMonitoredReader(myFile, "counting/reading bits ...");
         final ProgressMonitor progress = pmis.getProgressMonitor();
         try {
             myFirstFileThread = new Thread() {
                 public void run() {
                     try {
-                        myFirstReadingDone = false;
                         int saved = myModel.preprocessCompress(pmis, myHeaderFormat);
                         showMessage("saved: "+ saved +" bits");
-                        myFirstReadingDone = true;
                     } catch (IOException e) {
                         showError("reading exception\n " + e);
                         //e.printStackTrace();
@@ -213,6 +209,136 @@ public class GUIHuffViewer extends JFrame implements IHuffViewer {
 
         group.add(treeHeaderButton);
         headerMenu.add(treeHeaderButton);
+
+        // create the radio button for the custom (canonical code lengths) format
+        JRadioButtonMenuItem customHeaderButton 
+        = new JRadioButtonMenuItem();
+        customHeaderButton.setSelected(false);
+        customHeaderButton.setAction(new AbstractAction("Use Custom Format Header(canonical code lengths)") {
+            public void actionPerformed(ActionEvent ev) {
+                myHeaderFormat = IHuffConstants.STORE_CUSTOM;
+            }
+        });
+
+        group.add(customHeaderButton);
+        headerMenu.add(customHeaderButton);
+
+        // create the radio button for the block format, compressed in parallel
+        JRadioButtonMenuItem blockHeaderButton 
+        = new JRadioButtonMenuItem();
+        blockHeaderButton.setSelected(false);
+        blockHeaderButton.setAction(new AbstractAction("Use Block Format Header(parallel blocks)") {
+            public void actionPerformed(ActionEvent ev) {
+                myHeaderFormat = IHuffConstants.STORE_BLOCKS;
+            }
+        });
+
+        group.add(blockHeaderButton);
+        headerMenu.add(blockHeaderButton);
+
+        // create the radio button for the adaptive format, which has no header
+        JRadioButtonMenuItem adaptiveHeaderButton 
+        = new JRadioButtonMenuItem();
+        adaptiveHeaderButton.setSelected(false);
+        adaptiveHeaderButton.setAction(new AbstractAction("Use Adaptive Format(no header)") {
+            public void actionPerformed(ActionEvent ev) {
+                myHeaderFormat = IHuffConstants.STORE_ADAPTIVE;
+            }
+        });
+
+        group.add(adaptiveHeaderButton);
+        headerMenu.add(adaptiveHeaderButton);
+
+        // create the radio button for counts stored in as few bytes as each needs
+        JRadioButtonMenuItem varCountHeaderButton 
+        = new JRadioButtonMenuItem();
+        varCountHeaderButton.setSelected(false);
+        varCountHeaderButton.setAction(new AbstractAction("Use Variable Count Format Header(counts of any size)") {
+            public void actionPerformed(ActionEvent ev) {
+                myHeaderFormat = IHuffConstants.STORE_COUNTS_VAR;
+            }
+        });
+
+        group.add(varCountHeaderButton);
+        headerMenu.add(varCountHeaderButton);
+
+        // create the radio button for the order-1 context format
+        JRadioButtonMenuItem contextHeaderButton 
+        = new JRadioButtonMenuItem();
+        contextHeaderButton.setSelected(false);
+        contextHeaderButton.setAction(new AbstractAction("Use Context Format Header(code chosen by previous byte)") {
+            public void actionPerformed(ActionEvent ev) {
+                myHeaderFormat = IHuffConstants.STORE_CONTEXT;
+            }
+        });
+
+        group.add(contextHeaderButton);
+        headerMenu.add(contextHeaderButton);
+
+        // create the radio button for 16 bit symbols
+        JRadioButtonMenuItem wideHeaderButton 
+        = new JRadioButtonMenuItem();
+        wideHeaderButton.setSelected(false);
+        wideHeaderButton.setAction(new AbstractAction("Use Wide Format Header(16 bit symbols)") {
+            public void actionPerformed(ActionEvent ev) {
+                myHeaderFormat = IHuffConstants.STORE_WIDE;
+            }
+        });
+
+        group.add(wideHeaderButton);
+        headerMenu.add(wideHeaderButton);
+
+        // create the radio button for coding runs of a byte before Huffman coding
+        JRadioButtonMenuItem runLengthHeaderButton 
+        = new JRadioButtonMenuItem();
+        runLengthHeaderButton.setSelected(false);
+        runLengthHeaderButton.setAction(new AbstractAction("Use Run Length Format Header(long runs of a byte)") {
+            public void actionPerformed(ActionEvent ev) {
+                myHeaderFormat = IHuffConstants.STORE_RLE;
+            }
+        });
+
+        group.add(runLengthHeaderButton);
+        headerMenu.add(runLengthHeaderButton);
+
+        // create the radio button for Burrows-Wheeler transformed blocks
+        JRadioButtonMenuItem bwtHeaderButton 
+        = new JRadioButtonMenuItem();
+        bwtHeaderButton.setSelected(false);
+        bwtHeaderButton.setAction(new AbstractAction("Use BWT Format(sorted parallel blocks)") {
+            public void actionPerformed(ActionEvent ev) {
+                myHeaderFormat = IHuffConstants.STORE_BWT;
+            }
+        });
+
+        group.add(bwtHeaderButton);
+        headerMenu.add(bwtHeaderButton);
+
+        // create the radio button for LZ77 matches
+        JRadioButtonMenuItem lzHeaderButton 
+        = new JRadioButtonMenuItem();
+        lzHeaderButton.setSelected(false);
+        lzHeaderButton.setAction(new AbstractAction("Use LZ Format Header(repeated strings)") {
+            public void actionPerformed(ActionEvent ev) {
+                myHeaderFormat = IHuffConstants.STORE_LZ;
+            }
+        });
+
+        group.add(lzHeaderButton);
+        headerMenu.add(lzHeaderButton);
+
+        // create the radio button for storing the file without compressing it
+        JRadioButtonMenuItem rawHeaderButton 
+        = new JRadioButtonMenuItem();
+        rawHeaderButton.setSelected(false);
+        rawHeaderButton.setAction(new AbstractAction("Use Raw Format(stored, no compression)") {
+            public void actionPerformed(ActionEvent ev) {
+                myHeaderFormat = IHuffConstants.STORE_RAW;
+            }
+        });
+
+        group.add(rawHeaderButton);
+        headerMenu.add(rawHeaderButton);
         return headerMenu;
     }
 
@@ -281,9 +407,9 @@ public class GUIHuffViewer extends JFrame implements IHuffViewer {
             int pos = path.lastIndexOf(name);
             newName = path.substring(0, pos) + newName;
             final File newFile = new File(newName);
-            ProgressMonitorInputStream temp = null;
-            temp = getMonitorableStream(getFastByteReader(file),"uncompressing bits ...");
-            final ProgressMonitorInputStream stream = temp;
+            MonitoredFileInputStream temp = null;
+            temp = getMonitoredReader(file,"uncompressing bits ...");
+            final MonitoredFileInputStream stream = temp;
 
             final ProgressMonitor progress = stream.getProgressMonitor();
             final OutputStream out = new FileOutputStream(newFile);
@@ -313,8 +439,20 @@ public class GUIHuffViewer extends JFrame implements IHuffViewer {
         }
     }
 
+    /**
+     * Choose a file to read. Choice is via a pop up window.
+     * @return The file chosen, or null if none was.
+     */
+    private File chooseFile() {
+        int retval = ourChooser.showOpenDialog(null);
+        if (retval != JFileChooser.APPROVE_OPTION) {
+            return null;
+        }
+        return ourChooser.getSelectedFile();
+    }
+
     private void doSave() {
-        myFile = doRead();
+        myFile = chooseFile();
         if (myFile == null){
             return;
         }
@@ -338,23 +476,19 @@ public class GUIHuffViewer extends JFrame implements IHuffViewer {
         final File outputFile = new File(newName);
         try {
             final FileOutputStream out = new FileOutputStream(outputFile);
-            ProgressMonitorInputStream  temp = null;
-            temp = getMonitorableStream(getFastByteReader(myFile), "compressing bits...");
+            MonitoredFileInputStream  temp = null;
+            temp = getMonitoredReader(myFile, "counting/compressing bits...");
   
-            final ProgressMonitorInputStream pmis = temp; 
+            final MonitoredFileInputStream pmis = temp; 
             final ProgressMonitor progress = pmis.getProgressMonitor();
             Thread fileWriterThread = new Thread() {
                 public void run() {
                     try {
-                        while (! myFirstReadingDone){
-                            try {
-                                sleep(100);
-                            } catch (InterruptedException e) {
-                                // what to do?
-                                showError("Trouble in Thread " + e);
-                            }
+                        // the file is read once, counted and compressed in one call
+                        int written = myModel.compress(pmis, out, myHeaderFormat, myForce);
+                        if (written != -1) {
+                            showMessage("wrote: " + written + " bits");
                         }
-                        myModel.compress(pmis, out, myForce);
                     } catch (IOException e) {
                         showError("compression exception\n " + e);
                         cleanUp(outputFile);
@@ -455,22 +589,104 @@ public class GUIHuffViewer extends JFrame implements IHuffViewer {
                 JOptionPane.INFORMATION_MESSAGE);
     }
 
-    private ByteArrayInputStream getFastByteReader(File f){
-        ByteBuffer buffer = null;
+    /**
+     * Open a file to be read by the model, with a progress monitor that shows how much
+     * of it has been read.
+     * @param f is the file to read
+     * @param message is the message shown in the progress monitor
+     * @return a stream of the file, or null if it can't be opened
+     */
+    private MonitoredFileInputStream getMonitoredReader(File f, String message){
         try {
-            FileChannel channel = new FileInputStream(f).getChannel();
-            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
-            byte[] barray = new byte[buffer.limit()];
-
-            if (barray.length != channel.size()){               
-                showError(String.format("Reading %s error: lengths differ %d %ld\n",f.getName(),barray.length,channel.size()));
-            }
-            buffer.get(barray);
-            return new ByteArrayInputStream(barray);
+            return new MonitoredFileInputStream(f, message);
         } catch (IOException e) {
+            showError("could not open " + f.getName());
             e.printStackTrace();
         }
         return null;
     }
 
+    /**
+     * A MappedFileInputStream that shows in a progress monitor how much of the file
+     * has been read. The model still gets a mapped file, so it can read the mapped windows
+     * directly, which it can't through a ProgressMonitorInputStream. Windows are kept small
+     * so the progress moves smoothly. Like a ProgressMonitorInputStream, reading throws an
+     * InterruptedIOException once the monitor is cancelled.
+     */
+    private class MonitoredFileInputStream extends MappedFileInputStream {
+
+        private ProgressMonitor myProgress;
+        private int myShift;
+
+        private MonitoredFileInputStream(File file, String message) throws IOException {
+            super(file, MONITOR_WINDOW_SIZE);
+            // the monitor counts in ints, so a long file is counted in larger units
+            myShift = Math.max(0, Long.SIZE - Long.numberOfLeadingZeros(length()) 
+                    - (Integer.SIZE - 1));
+            myProgress = new ProgressMonitor(GUIHuffViewer.this, message, null, 0,
+                    (int) (length() >> myShift));
+            myProgress.setMillisToDecideToPopup(1);
+            myProgress.setMillisToPopup(1);
+        }
+
+        private MonitoredFileInputStream(MonitoredFileInputStream other) throws IOException {
+            super(other);
+            myProgress = other.myProgress;
+            myShift = other.myShift;
+        }
+
+        public ProgressMonitor getProgressMonitor() {
+            return myProgress;
+        }
+
+        public MappedFileInputStream reopen() throws IOException {
+            return new MonitoredFileInputStream(this);
+        }
+
+        public ByteBuffer nextWindow() throws IOException {
+            checkCanceled();
+            ByteBuffer window = super.nextWindow();
+            showProgress();
+            return window;
+        }
+
+        public int read() throws IOException {
+            checkCanceled();
+            int b = super.read();
+            showProgress();
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkCanceled();
+            int numRead = super.read(b, off, len);
+            showProgress();
+            return numRead;
+        }
+
+        public long skip(long n) throws IOException {
+            checkCanceled();
+            long numSkipped = super.skip(n);
+            showProgress();
+            return numSkipped;
+        }
+
+        public void close() throws IOException {
+            super.close();
+            if (!myProgress.isCanceled()) {
+                myProgress.close(); // a cancelled monitor is kept so isCanceled stays true
+            }
+        }
+
+        private void checkCanceled() throws InterruptedIOException {
+            if (myProgress.isCanceled()) {
+                throw new InterruptedIOException("progress");
+            }
+        }
+
+        private void showProgress() {
+            myProgress.setProgress((int) (position() >> myShift));
+        }
+    }
+
 }
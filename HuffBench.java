@@ -0,0 +1,463 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Repeatable microbenchmarks for the parts of the compressor: writing bits with
+ * <code>BitOutputStream.writeBits</code>, reading them with <code>BitInputStream.readBits</code>,
+ * building a <code>HuffmanCodeTree</code>, and <code>preprocessCompress</code>,
+ * <code>compress</code> and <code>uncompress</code> of <code>SimpleHuffProcessor</code>.
+ * <P>
+ * Every benchmark runs over synthetic data made from a fixed seed, so runs on different machines
+ * or builds measure exactly the same work, and all data is in memory so no file I/O is timed.
+ * The corpora are uniform random bytes, Zipfian bytes, English-like text, structured binary
+ * records and already compressed data, each at several sizes.
+ * <P>
+ * Measurement follows the usual harness rules: a number of warmup iterations that are not
+ * reported, then measured iterations that each repeat the operation for at least a fixed time.
+ * Results are consumed so the JIT can't remove the work. The score is the mean throughput over
+ * the measured iterations, in MB/s of input (operations per second for tree building), with
+ * the half width of its 99% confidence interval as the error.
+ * <P>
+ * Usage: <code>java HuffBench [-bench names] [-corpus names] [-size bytes,...]
+ * [-format name] [-warmup n] [-iterations n] [-time ms] [-seed n]</code>, where lists are
+ * separated by commas. With no arguments every benchmark is run on every corpus and size.
+ */
+public class HuffBench {
+
+    public static final String[] BENCHMARKS =
+        {"writeBits", "readBits", "buildTree", "preprocess", "compress", "uncompress"};
+    public static final String[] CORPORA = {"uniform", "zipf", "text", "binary", "compressed"};
+
+    private static final int[] DEFAULT_SIZES = {1 << 16, 1 << 20, 1 << 24};
+    private static final int DEFAULT_WARMUP = 5;
+    private static final int DEFAULT_ITERATIONS = 10;
+    private static final int DEFAULT_ITERATION_MILLIS = 200;
+    private static final long DEFAULT_SEED = 42;
+    private static final double Z_99 = 2.576;
+    private static final double ZIPF_EXPONENT = 1.1;
+    private static final double BYTES_PER_MB = 1 << 20;
+
+    private static final String[] WORDS = {"the", "of", "and", "to", "a", "in", "is", "it",
+        "that", "was", "for", "on", "are", "with", "as", "his", "they", "be", "at", "one",
+        "have", "this", "from", "or", "had", "by", "word", "but", "what", "some", "we", "can",
+        "out", "other", "were", "all", "there", "when", "up", "use", "your", "how", "said",
+        "an", "each", "she", "which", "do", "their", "time", "if", "will", "way", "about",
+        "many", "then", "them", "write", "would", "like", "so", "these", "her", "long", "make",
+        "thing", "see", "him", "two", "has", "look", "more", "day", "could", "go", "come",
+        "did", "number", "sound", "no", "most", "people", "my", "over", "know", "water",
+        "than", "call", "first", "who", "may", "down", "side", "been", "now", "find", "Huffman",
+        "compression", "tree", "frequency", "encoding", "priority", "queue", "algorithm"};
+
+    // results of each operation are added here so the work can't be optimized away
+    private static volatile long ourSink;
+
+    private List<String> myBenchmarks;
+    private List<String> myCorpora;
+    private int[] mySizes;
+    private int myFormat;
+    private int myWarmup;
+    private int myIterations;
+    private long myIterationNanos;
+    private long mySeed;
+
+    public HuffBench() {
+        myBenchmarks = Arrays.asList(BENCHMARKS);
+        myCorpora = Arrays.asList(CORPORA);
+        mySizes = DEFAULT_SIZES;
+        myFormat = IHuffConstants.STORE_COUNTS;
+        myWarmup = DEFAULT_WARMUP;
+        myIterations = DEFAULT_ITERATIONS;
+        myIterationNanos = DEFAULT_ITERATION_MILLIS * 1000000L;
+        mySeed = DEFAULT_SEED;
+    }
+
+    /**
+     * An operation to time. Each call does the whole operation once and returns something
+     * computed from its result.
+     */
+    private interface Operation {
+        long run() throws IOException;
+    }
+
+    /**
+     * Make the data of a corpus.
+     * @param corpus is one of CORPORA
+     * @param size is the number of bytes to make
+     * @param seed is the seed of the random numbers, the same seed always makes the same data
+     * @return the bytes of the corpus
+     */
+    public static byte[] makeCorpus(String corpus, int size, long seed) {
+        Random rand = new Random(seed);
+        switch (corpus) {
+            case "uniform":
+                byte[] bytes = new byte[size];
+                rand.nextBytes(bytes);
+                return bytes;
+            case "zipf":
+                return makeZipf(size, rand);
+            case "text":
+                return makeText(size, rand);
+            case "binary":
+                return makeBinary(size, rand);
+            case "compressed":
+                return makeCompressed(size, rand);
+            default:
+                throw new IllegalArgumentException("unknown corpus: " + corpus);
+        }
+    }
+
+    /*
+     * Bytes whose ranks follow Zipf's law, the rank of each byte value shuffled.
+     */
+    private static byte[] makeZipf(int size, Random rand) {
+        double[] cumulative = zipfCumulative(IHuffConstants.ALPH_SIZE);
+        int[] order = shuffled(IHuffConstants.ALPH_SIZE, rand);
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) order[sampleRank(cumulative, rand)];
+        }
+        return bytes;
+    }
+
+    /*
+     * Words with Zipfian frequencies, with punctuation, capitals and line breaks.
+     */
+    private static byte[] makeText(int size, Random rand) {
+        double[] cumulative = zipfCumulative(WORDS.length);
+        StringBuilder text = new StringBuilder(size + 16);
+        int lineLength = 0;
+        boolean capital = true;
+        while (text.length() < size) {
+            String word = WORDS[sampleRank(cumulative, rand)];
+            if (capital) {
+                word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+            }
+            text.append(word);
+            lineLength += word.length() + 1;
+            capital = rand.nextInt(12) == 0;
+            if (capital) {
+                text.append('.');
+            } else if (rand.nextInt(10) == 0) {
+                text.append(',');
+            }
+            if (lineLength > 70) {
+                text.append('\n');
+                lineLength = 0;
+            } else {
+                text.append(' ');
+            }
+        }
+        return Arrays.copyOf(text.toString().getBytes(StandardCharsets.US_ASCII), size);
+    }
+
+    /*
+     * Fixed size little endian records: an increasing id, a small count, a random walk and a
+     * type code, like a table dumped from a program.
+     */
+    private static byte[] makeBinary(int size, Random rand) {
+        ByteBuffer records = ByteBuffer.allocate(size + 24).order(ByteOrder.LITTLE_ENDIAN);
+        int id = rand.nextInt(1000);
+        double walk = 100;
+        while (records.position() < size) {
+            records.putInt(id);
+            records.putShort((short) rand.nextInt(1000));
+            records.putDouble(walk);
+            records.put((byte) rand.nextInt(4));
+            records.put((byte) 0);
+            id += 1 + rand.nextInt(3);
+            walk += rand.nextGaussian();
+        }
+        return Arrays.copyOf(records.array(), size);
+    }
+
+    /*
+     * Text compressed with DEFLATE, which leaves little for Huffman coding to find.
+     */
+    private static byte[] makeCompressed(int size, Random rand) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(size);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        byte[] chunk = new byte[1 << 16];
+        while (compressed.size() < size) {
+            deflater.setInput(makeText(1 << 20, rand));
+            int numWritten = deflater.deflate(chunk, 0, chunk.length, Deflater.SYNC_FLUSH);
+            while (numWritten > 0) {
+                compressed.write(chunk, 0, numWritten);
+                numWritten = deflater.deflate(chunk, 0, chunk.length, Deflater.SYNC_FLUSH);
+            }
+        }
+        deflater.end();
+        return Arrays.copyOf(compressed.toByteArray(), size);
+    }
+
+    private static double[] zipfCumulative(int numRanks) {
+        double[] cumulative = new double[numRanks];
+        double total = 0;
+        for (int rank = 0; rank < numRanks; rank++) {
+            total += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+            cumulative[rank] = total;
+        }
+        for (int rank = 0; rank < numRanks; rank++) {
+            cumulative[rank] /= total;
+        }
+        return cumulative;
+    }
+
+    private static int sampleRank(double[] cumulative, Random rand) {
+        int rank = Arrays.binarySearch(cumulative, rand.nextDouble());
+        return Math.min(rank < 0 ? -rank - 1 : rank, cumulative.length - 1);
+    }
+
+    private static int[] shuffled(int n, Random rand) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            int temp = order[i];
+            order[i] = order[j];
+            order[j] = temp;
+        }
+        return order;
+    }
+
+    /**
+     * Get the header format constant for a name used on the command line.
+     * @param name is counts, countsvar, tree, custom, blocks, adaptive, context, wide, rle, bwt,
+     * lz or raw
+     * @return the matching constant of IHuffConstants
+     * @throws IllegalArgumentException if the name is not a format
+     */
+    public static int formatNamed(String name) {
+        switch (name) {
+            case "counts":
+                return IHuffConstants.STORE_COUNTS;
+            case "countsvar":
+                return IHuffConstants.STORE_COUNTS_VAR;
+            case "tree":
+                return IHuffConstants.STORE_TREE;
+            case "custom":
+                return IHuffConstants.STORE_CUSTOM;
+            case "blocks":
+                return IHuffConstants.STORE_BLOCKS;
+            case "adaptive":
+                return IHuffConstants.STORE_ADAPTIVE;
+            case "context":
+                return IHuffConstants.STORE_CONTEXT;
+            case "wide":
+                return IHuffConstants.STORE_WIDE;
+            case "rle":
+                return IHuffConstants.STORE_RLE;
+            case "bwt":
+                return IHuffConstants.STORE_BWT;
+            case "lz":
+                return IHuffConstants.STORE_LZ;
+            case "raw":
+                return IHuffConstants.STORE_RAW;
+            default:
+                throw new IllegalArgumentException("unknown header format: " + name);
+        }
+    }
+
+    /*
+     * Set up the operation of a benchmark for the data. Work that is not being measured, like
+     * making the codes written by writeBits, is done here.
+     */
+    private Operation setUp(String benchmark, byte[] data) throws IOException {
+        long[] freqs = new long[IHuffConstants.ALPH_SIZE];
+        for (byte b : data) {
+            freqs[b & 0xff]++;
+        }
+        switch (benchmark) {
+            case "writeBits":
+                HuffmanCodeTree tree = new HuffmanCodeTree(makeQueue(freqs));
+                int[] codes = tree.getCodes();
+                byte[] lengths = tree.getCodeLengths();
+                return () -> {
+                    BitOutputStream out = new BitOutputStream(
+                            new BufferedOutputStream(OutputStream.nullOutputStream()));
+                    for (byte b : data) {
+                        int value = b & 0xff;
+                        out.writeBits(lengths[value], codes[value]);
+                    }
+                    out.flush();
+                    return data.length;
+                };
+            case "readBits":
+                return () -> {
+                    BitInputStream in = new BitInputStream(new ByteArrayInputStream(data));
+                    long sum = 0;
+                    int bits = in.readBits(IHuffConstants.BITS_PER_WORD);
+                    while (bits != -1) {
+                        sum += bits;
+                        bits = in.readBits(IHuffConstants.BITS_PER_WORD);
+                    }
+                    return sum;
+                };
+            case "buildTree":
+                return () -> new HuffmanCodeTree(makeQueue(freqs)).size();
+            case "preprocess":
+                return () -> new SimpleHuffProcessor().preprocessCompress(
+                        new ByteArrayInputStream(data), myFormat);
+            case "compress":
+                SimpleHuffProcessor compressor = new SimpleHuffProcessor();
+                compressor.preprocessCompress(new ByteArrayInputStream(data), myFormat);
+                return () -> compressor.compress(new ByteArrayInputStream(data),
+                        OutputStream.nullOutputStream(), true);
+            case "uncompress":
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                new SimpleHuffProcessor().compress(new ByteArrayInputStream(data), compressed,
+                        myFormat);
+                byte[] compressedBytes = compressed.toByteArray();
+                SimpleHuffProcessor uncompressor = new SimpleHuffProcessor();
+                return () -> uncompressor.uncompress(new ByteArrayInputStream(compressedBytes),
+                        OutputStream.nullOutputStream());
+            default:
+                throw new IllegalArgumentException("unknown benchmark: " + benchmark);
+        }
+    }
+
+    private static PriorityQueue<TreeNode> makeQueue(long[] freqs) {
+        PriorityQueue<TreeNode> queue = new PriorityQueue<TreeNode>();
+        for (int value = 0; value < freqs.length; value++) {
+            if (freqs[value] != 0) {
+                queue.add(new TreeNode(value, freqs[value]));
+            }
+        }
+        queue.add(new TreeNode(IHuffConstants.PSEUDO_EOF, 1));
+        return queue;
+    }
+
+    /*
+     * Run the operation over and over for at least the iteration time.
+     * Return the number of operations per second.
+     */
+    private double iteration(Operation op) throws IOException {
+        long sum = 0;
+        long numOps = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            sum += op.run();
+            numOps++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < myIterationNanos);
+        ourSink += sum;
+        return numOps * 1e9 / elapsed;
+    }
+
+    /**
+     * Run one benchmark on one corpus and print a line of results.
+     * @param benchmark is one of BENCHMARKS
+     * @param corpus is one of CORPORA
+     * @param size is the number of bytes of the corpus
+     * @throws IOException if the operation fails
+     */
+    public void run(String benchmark, String corpus, int size) throws IOException {
+        byte[] data = makeCorpus(corpus, size, mySeed);
+        Operation op = setUp(benchmark, data);
+        for (int i = 0; i < myWarmup; i++) {
+            iteration(op);
+        }
+        boolean perByte = !benchmark.equals("buildTree");
+        double[] scores = new double[myIterations];
+        for (int i = 0; i < myIterations; i++) {
+            double opsPerSecond = iteration(op);
+            scores[i] = perByte ? opsPerSecond * size / BYTES_PER_MB : opsPerSecond;
+        }
+        double mean = Arrays.stream(scores).average().orElse(0);
+        double variance = 0;
+        for (double score : scores) {
+            variance += (score - mean) * (score - mean);
+        }
+        variance /= Math.max(scores.length - 1, 1);
+        double error = Z_99 * Math.sqrt(variance / scores.length);
+        System.out.printf("%-11s %-11s %10d %12.1f +- %9.1f %s\n", benchmark, corpus, size,
+                mean, error, perByte ? "MB/s" : "ops/s");
+    }
+
+    public void doBench() throws IOException {
+        System.out.printf("java %s, %d processors, seed %d, %d warmup and %d measured "
+                + "iterations of %d ms\n", System.getProperty("java.version"),
+                Runtime.getRuntime().availableProcessors(), mySeed, myWarmup, myIterations,
+                myIterationNanos / 1000000);
+        System.out.printf("%-11s %-11s %10s %12s    %9s %s\n", "Benchmark", "Corpus", "Size",
+                "Score", "Error", "Units");
+        for (String benchmark : myBenchmarks) {
+            for (String corpus : myCorpora) {
+                for (int size : mySizes) {
+                    run(benchmark, corpus, size);
+                }
+            }
+        }
+    }
+
+    /*
+     * Read the options, see the class comment.
+     */
+    private void parseArgs(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-bench":
+                    myBenchmarks = checked(value.split(","), BENCHMARKS);
+                    break;
+                case "-corpus":
+                    myCorpora = checked(value.split(","), CORPORA);
+                    break;
+                case "-size":
+                    mySizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt)
+                            .toArray();
+                    break;
+                case "-format":
+                    myFormat = formatNamed(value);
+                    break;
+                case "-warmup":
+                    myWarmup = Integer.parseInt(value);
+                    break;
+                case "-iterations":
+                    myIterations = Integer.parseInt(value);
+                    break;
+                case "-time":
+                    myIterationNanos = Long.parseLong(value) * 1000000L;
+                    break;
+                case "-seed":
+                    mySeed = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option: " + args[i]);
+            }
+        }
+        if (args.length % 2 != 0) {
+            throw new IllegalArgumentException("missing value for " + args[args.length - 1]);
+        }
+    }
+
+    private static List<String> checked(String[] names, String[] allowed) {
+        List<String> result = new ArrayList<String>();
+        for (String name : names) {
+            if (!Arrays.asList(allowed).contains(name)) {
+                throw new IllegalArgumentException("unknown name: " + name);
+            }
+            result.add(name);
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws IOException {
+        HuffBench bench = new HuffBench();
+        bench.parseArgs(args);
+        bench.doBench();
+    }
+}
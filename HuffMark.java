@@ -2,8 +2,16 @@ import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 
 import java.io.*;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
+import java.lang.management.ManagementFactory;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
 
 public class HuffMark {
     protected static JFileChooser ourOpenChooser = new JFileChooser(System
@@ -26,11 +34,10 @@ public class HuffMark {
         if (f.isDirectory()) return; // don't read directories
         
         double start = System.currentTimeMillis();
-        myHuffer.preprocessCompress(getFastByteReader(f), IHuffProcessor.STORE_COUNTS);
         File outFile = new File(getCompressedName(f));
         FileOutputStream out = new FileOutputStream(outFile);
         System.out.println("compressing to: "+outFile.getCanonicalPath());
-        myHuffer.compress(getFastByteReader(f), out,true);
+        myHuffer.compress(getFastByteReader(f), out, IHuffProcessor.STORE_COUNTS);
         double end = System.currentTimeMillis();
         double time = (end-start)/1000.0;
         
@@ -63,7 +70,349 @@ public class HuffMark {
     
     public static void main(String[] args) throws IOException{
         HuffMark hf = new HuffMark();
-        hf.doMark();
+        if (args.length == 0) {
+            hf.doMark();
+        } else {
+            System.exit(hf.doHeadless(args) ? 0 : 1);
+        }
+    }
+    
+    /**
+     * Benchmark without any dialogs, for scripts and machines with no display. Usage:
+     * <code>java HuffMark [-format name] [-level n] [-warmup n] [-iterations n]
+     * [-output csv|json] path...</code>, where each path is a file, a directory whose files
+     * are all used, or a glob such as <code>data/*.txt</code>. The level only matters to the
+     * lz format. Each file is read into memory once, so only compressing and uncompressing
+     * are timed. Every iteration compresses the file with
+     * preprocessCompress and compress, uncompresses it and checks that the result is the
+     * same as the file. A line of results for each file and one for all of them together are
+     * written to standard out.
+     * @param args are the options and paths
+     * @return true if every file was compressed and uncompressed correctly
+     * @throws IOException if a directory or glob can't be listed
+     */
+    public boolean doHeadless(String[] args) throws IOException {
+        HeadlessOptions options = new HeadlessOptions(args);
+        List<File> files = new ArrayList<File>();
+        for (String path : options.paths) {
+            addFiles(path, files);
+        }
+        List<MarkResult> results = new ArrayList<MarkResult>();
+        MarkResult total = new MarkResult("TOTAL", options.iterations);
+        for (File f : files) {
+            System.err.println("marking " + f.getPath());
+            MarkResult result = mark(f, options);
+            results.add(result);
+            total.add(result);
+        }
+        results.add(total);
+        if (options.json) {
+            printJson(results);
+        } else {
+            printCsv(results);
+        }
+        return total.error == null;
+    }
+    
+    /*
+     * Add the files named by a path, directory or glob, in name order.
+     */
+    private void addFiles(String path, List<File> files) throws IOException {
+        File f = new File(path);
+        if (f.isDirectory()) {
+            File[] list = f.listFiles();
+            Arrays.sort(list);
+            for (File child : list) {
+                if (child.isFile() && !child.getName().endsWith(SUFFIX)) {
+                    files.add(child);
+                }
+            }
+        } else if (f.isFile() || !isGlob(path)) {
+            files.add(f); // a missing file is reported as an error when it is marked
+        } else {
+            
+            // walk from the part of the glob with no wildcards
+            Path glob = Paths.get(path);
+            Path root = glob.isAbsolute() ? glob.getRoot() : Paths.get("");
+            for (Path part : glob) {
+                if (isGlob(part.toString())) {
+                    break;
+                }
+                root = root.resolve(part);
+            }
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + path);
+            try (Stream<Path> walk = Files.walk(root)) {
+                walk.filter(p -> Files.isRegularFile(p) && matcher.matches(p))
+                    .sorted().forEach(p -> files.add(p.toFile()));
+            }
+        }
+    }
+    
+    private static boolean isGlob(String path) {
+        return path.indexOf('*') != -1 || path.indexOf('?') != -1
+                || path.indexOf('[') != -1 || path.indexOf('{') != -1;
+    }
+    
+    /*
+     * Warm up, then time each measured iteration of compressing and uncompressing the file.
+     */
+    private MarkResult mark(File f, HeadlessOptions options) {
+        MarkResult result = new MarkResult(f.getPath(), options.iterations);
+        try {
+            byte[] data = Files.readAllBytes(f.toPath());
+            result.bytes = data.length;
+            for (int i = 0; i < options.warmup; i++) {
+                roundTrip(data, options, null, i);
+            }
+            long allocatedBefore = allocatedBytes();
+            for (int i = 0; i < options.iterations; i++) {
+                roundTrip(data, options, result, i);
+            }
+            result.allocatedBytes = allocatedBytes() - allocatedBefore;
+        } catch (IOException | RuntimeException e) {
+            result.error = e.toString();
+        }
+        return result;
+    }
+    
+    /*
+     * Compress and uncompress data once, recording the times of measured iterations.
+     */
+    private void roundTrip(byte[] data, HeadlessOptions options, MarkResult result, int iteration) 
+            throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2 + 64);
+        long start = System.nanoTime();
+        SimpleHuffProcessor compressor = new SimpleHuffProcessor();
+        compressor.setLevel(options.level);
+        compressor.preprocessCompress(new ByteArrayInputStream(data), options.format);
+        compressor.compress(new ByteArrayInputStream(data), compressed, true);
+        long compressEnd = System.nanoTime();
+        ByteArrayOutputStream uncompressed = new ByteArrayOutputStream(data.length);
+        byte[] compressedBytes = compressed.toByteArray();
+        long uncompressStart = System.nanoTime();
+        new SimpleHuffProcessor().uncompress(new ByteArrayInputStream(compressedBytes), 
+                uncompressed);
+        long end = System.nanoTime();
+        if (!Arrays.equals(data, uncompressed.toByteArray())) {
+            throw new IOException("uncompressed file is not the same as the original");
+        }
+        if (result != null) {
+            result.compressNanos[iteration] = compressEnd - start;
+            result.uncompressNanos[iteration] = end - uncompressStart;
+            result.compressedBytes = compressedBytes.length;
+        }
+    }
+    
+    /*
+     * Bytes allocated so far by all live threads, including pool threads, or -1 if the JVM
+     * can't tell.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+        if (!sunThreads.isThreadAllocatedMemorySupported() 
+                || !sunThreads.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : sunThreads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(bytes, 0);
+        }
+        return total;
+    }
+    
+    private static final String[] COLUMNS = {"file", "bytes", "compressed_bytes", "ratio", 
+        "compress_mb_s", "uncompress_mb_s", "compress_p50_ms", "compress_p99_ms", 
+        "uncompress_p50_ms", "uncompress_p99_ms", "alloc_mb_s", "verified", "error"};
+    
+    private void printCsv(List<MarkResult> results) {
+        System.out.println(String.join(",", COLUMNS));
+        for (MarkResult result : results) {
+            Object[] values = result.values();
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                line.append(csvField(values[i]));
+            }
+            System.out.println(line);
+        }
+    }
+    
+    private void printJson(List<MarkResult> results) {
+        System.out.println("[");
+        for (int r = 0; r < results.size(); r++) {
+            Object[] values = results.get(r).values();
+            StringBuilder line = new StringBuilder("  {");
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    line.append(", ");
+                }
+                line.append('"').append(COLUMNS[i]).append("\": ").append(jsonValue(values[i]));
+            }
+            line.append(r + 1 < results.size() ? "}," : "}");
+            System.out.println(line);
+        }
+        System.out.println("]");
+    }
+    
+    private static String csvField(Object value) {
+        String s = format(value);
+        if (s.indexOf(',') != -1 || s.indexOf('"') != -1 || s.indexOf('\n') != -1) {
+            s = '"' + s.replace("\"", "\"\"") + '"';
+        }
+        return s;
+    }
+    
+    private static String jsonValue(Object value) {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof String) {
+            StringBuilder s = new StringBuilder("\"");
+            for (char c : ((String) value).toCharArray()) {
+                if (c == '"' || c == '\\') {
+                    s.append('\\').append(c);
+                } else if (c < ' ') {
+                    s.append(String.format("\\u%04x", (int) c));
+                } else {
+                    s.append(c);
+                }
+            }
+            return s.append('"').toString();
+        }
+        if (value instanceof Double && ((Double) value).isNaN()) {
+            return "null";
+        }
+        return format(value);
+    }
+    
+    private static String format(Object value) {
+        if (value == null) {
+            return "";
+        }
+        if (value instanceof Double) {
+            double d = (Double) value;
+            return Double.isNaN(d) ? "" : String.format("%.3f", d);
+        }
+        return value.toString();
+    }
+    
+    /*
+     * The command line options of the headless mode.
+     */
+    private static class HeadlessOptions {
+        private int format = IHuffProcessor.STORE_COUNTS;
+        private int level = LzHuffmanCode.DEFAULT_LEVEL;
+        private int warmup = 3;
+        private int iterations = 10;
+        private boolean json;
+        private List<String> paths = new ArrayList<String>();
+        
+        private HeadlessOptions(String[] args) {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.startsWith("-") && i + 1 >= args.length) {
+                    throw new IllegalArgumentException("missing value for " + arg);
+                }
+                if (arg.equals("-format")) {
+                    format = HuffBench.formatNamed(args[++i]);
+                } else if (arg.equals("-level")) {
+                    level = Integer.parseInt(args[++i]);
+                    LzHuffmanCode.checkSettings(level, LzHuffmanCode.DEFAULT_WINDOW_BITS);
+                } else if (arg.equals("-warmup")) {
+                    warmup = Integer.parseInt(args[++i]);
+                } else if (arg.equals("-iterations")) {
+                    iterations = Integer.parseInt(args[++i]);
+                } else if (arg.equals("-output")) {
+                    String output = args[++i];
+                    if (!output.equals("csv") && !output.equals("json")) {
+                        throw new IllegalArgumentException("output must be csv or json");
+                    }
+                    json = output.equals("json");
+                } else if (arg.startsWith("-")) {
+                    throw new IllegalArgumentException("unknown option: " + arg);
+                } else {
+                    paths.add(arg);
+                }
+            }
+            if (iterations < 1 || warmup < 0) {
+                throw new IllegalArgumentException("need at least one measured iteration");
+            }
+        }
+    }
+    
+    /*
+     * The times and sizes of one file, or the sums for all files.
+     */
+    private static class MarkResult {
+        private String name;
+        private long bytes;
+        private long compressedBytes;
+        private long[] compressNanos;
+        private long[] uncompressNanos;
+        private long allocatedBytes;
+        private String error;
+        
+        private MarkResult(String name, int iterations) {
+            this.name = name;
+            compressNanos = new long[iterations];
+            uncompressNanos = new long[iterations];
+        }
+        
+        // add the sizes and times of another result, the time of iteration i of each file
+        // adding up to iteration i of the total
+        private void add(MarkResult other) {
+            if (other.error != null) {
+                error = "a file failed";
+                return;
+            }
+            bytes += other.bytes;
+            compressedBytes += other.compressedBytes;
+            for (int i = 0; i < compressNanos.length; i++) {
+                compressNanos[i] += other.compressNanos[i];
+                uncompressNanos[i] += other.uncompressNanos[i];
+            }
+            allocatedBytes = allocatedBytes < 0 || other.allocatedBytes < 0 
+                    ? -1 : allocatedBytes + other.allocatedBytes;
+        }
+        
+        private Object[] values() {
+            double mb = bytes / (double) (1 << 20);
+            long totalNanos = sum(compressNanos) + sum(uncompressNanos);
+            boolean timed = error == null && totalNanos > 0;
+            return new Object[] {name, bytes, compressedBytes, 
+                bytes == 0 ? Double.NaN : (double) compressedBytes / bytes,
+                timed ? mb * 1e9 * compressNanos.length / sum(compressNanos) : Double.NaN,
+                timed ? mb * 1e9 * uncompressNanos.length / sum(uncompressNanos) : Double.NaN,
+                timed ? percentile(compressNanos, 50) : Double.NaN,
+                timed ? percentile(compressNanos, 99) : Double.NaN,
+                timed ? percentile(uncompressNanos, 50) : Double.NaN,
+                timed ? percentile(uncompressNanos, 99) : Double.NaN,
+                timed && allocatedBytes >= 0 
+                    ? allocatedBytes / (double) (1 << 20) * 1e9 / totalNanos : Double.NaN,
+                error == null, error};
+        }
+        
+        private static long sum(long[] values) {
+            long total = 0;
+            for (long value : values) {
+                total += value;
+            }
+            return total;
+        }
+        
+        // nearest rank percentile, in milliseconds
+        private static double percentile(long[] nanos, int percent) {
+            long[] sorted = nanos.clone();
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+            return sorted[Math.max(rank - 1, 0)] / 1e6;
+        }
     }
     
     
@@ -82,27 +431,12 @@ public class HuffMark {
     }
     
     
-    private InputStream getFastByteReader(File f) throws FileNotFoundException{
+    private InputStream getFastByteReader(File f) throws IOException{
         
         if (!FAST_READER){
             return new FileInputStream(f);
         }
-        
-        ByteBuffer buffer = null;
-         try {
-             FileChannel channel = new FileInputStream(f).getChannel();
-             buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
-             byte[] barray = new byte[buffer.limit()];
-           
-             if (barray.length != channel.size()){               
-                 System.err.println(String.format("Reading %s error: lengths differ %d %ld\n",f.getName(),barray.length,channel.size()));
-             }
-             buffer.get(barray);
-             return new ByteArrayInputStream(barray);
-         } catch (IOException e) {
-             e.printStackTrace();
-         }
-         return null;
+        return new MappedFileInputStream(f);
     }
     
 }
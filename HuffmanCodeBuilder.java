@@ -0,0 +1,302 @@
+import java.util.Arrays;
+
+/**
+ * Builds Huffman codes from an array of frequencies without making TreeNode objects. The
+ * values are sorted by frequency once, then merged with the two-queue method: the sorted
+ * values form one queue and the merged nodes, which are made in order of frequency, form the
+ * other, so the smallest node is always at the front of one of them. The tree is kept as the
+ * parent of each node, and the code lengths are the depths of the leaves.
+ * <P>
+ * Ties are broken the same way as the PriorityQueue in HuffmanCodeTree: values with equal
+ * frequencies in order of value, and values before merged nodes. So the codes, and not just the
+ * code lengths, are the same as those of a HuffmanCodeTree made from the same frequencies.
+ * <P>
+ * limitedCodeLengths makes code lengths with a limit on the longest code, using the
+ * package-merge algorithm.
+ */
+public class HuffmanCodeBuilder {
+
+    private int[] codes;
+    private byte[] codeLengths;
+    private int maxCodeLength;
+
+    /**
+     * builds the codes for the values with a frequency greater than 0.
+     * pre: freqs != null, no frequency is negative
+     * post: none
+     * @param freqs, the frequency of each value, including PSEUDO_EOF if it is to get a code
+     */
+    public HuffmanCodeBuilder(int[] freqs) {
+        this(toLong(freqs));
+    }
+
+    /**
+     * builds the codes for the values with a frequency greater than 0, for frequencies too large
+     * for an int.
+     * pre: freqs != null, no frequency is negative, the frequencies fit in 63 bits less the bits
+     * needed for a value
+     * post: none
+     * @param freqs, the frequency of each value, including PSEUDO_EOF if it is to get a code
+     */
+    public HuffmanCodeBuilder(long[] freqs) {
+        codes = new int[freqs.length];
+        codeLengths = new byte[freqs.length];
+        long[] sorted = sortUsed(freqs);
+        if(sorted.length > 0) {
+            build(sorted, sorted.length, valueBits(freqs.length));
+        }
+    }
+
+    /**
+     * copies int frequencies to a long array
+     * @param freqs, the frequency of each value
+     * @return the same frequencies as longs
+     */
+    private static long[] toLong(int[] freqs) {
+        long[] result = new long[freqs.length];
+        for(int x = 0; x < freqs.length; x++) {
+            result[x] = freqs[x];
+        }
+        return result;
+    }
+
+    /**
+     * gets the number of low bits used for the value in a sorted entry
+     * @param numValues, the number of values
+     * @return the number of bits needed to hold any value
+     */
+    private static int valueBits(int numValues) {
+        return Integer.SIZE - Integer.numberOfLeadingZeros(Math.max(numValues - 1, 1));
+    }
+
+    /**
+     * sorts the values that are used by frequency, then by value
+     * @param freqs, the frequency of each value, 0 for unused values
+     * @return the frequency of each used value in the high bits, the value in the low
+     * valueBits bits
+     */
+    private static long[] sortUsed(long[] freqs) {
+        int valueBits = valueBits(freqs.length);
+        long maxFreq = Long.MAX_VALUE >>> valueBits;
+        long[] sorted = new long[freqs.length];
+        int numLeaf = 0;
+        for(int x = 0; x < freqs.length; x++) {
+            if(freqs[x] < 0 || freqs[x] > maxFreq) {
+                throw new IllegalArgumentException("Violation of precondition: "
+                        + "HuffmanCodeBuilder. Frequencies must be between 0 and " + maxFreq + ".");
+            }
+            if(freqs[x] > 0) {
+                sorted[numLeaf++] = (freqs[x] << valueBits) | x;
+            }
+        }
+        sorted = Arrays.copyOf(sorted, numLeaf);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * merges the sorted values into a tree and sets the code and code length of each value.
+     * Leaves are nodes 0 to numLeaf - 1 in sorted order, merged nodes follow in the order they
+     * are made, so the root is the last node and every parent comes after its children.
+     * @param sorted, the frequency of each used value in the high bits, the value in the low
+     * @param numLeaf, the number of used values
+     * @param valueBits, the number of low bits of an entry of sorted that hold the value
+     */
+    private void build(long[] sorted, int numLeaf, int valueBits) {
+        int numNodes = 2*numLeaf - 1;
+        long[] weights = new long[numNodes];
+        int[] parents = new int[numNodes];
+        boolean[] isRight = new boolean[numNodes];
+        for(int x = 0; x < numLeaf; x++) {
+            weights[x] = sorted[x] >>> valueBits;
+        }
+
+        //front of the leaf queue and front of the merged node queue
+        int leafFront = 0;
+        int nodeFront = numLeaf;
+        for(int made = numLeaf; made < numNodes; made++) {
+            int left = takeSmallest(weights, leafFront, numLeaf, nodeFront, made);
+            if(left < numLeaf) {
+                leafFront++;
+            }
+            else {
+                nodeFront++;
+            }
+            int right = takeSmallest(weights, leafFront, numLeaf, nodeFront, made);
+            if(right < numLeaf) {
+                leafFront++;
+            }
+            else {
+                nodeFront++;
+            }
+            weights[made] = weights[left] + weights[right];
+            parents[left] = made;
+            parents[right] = made;
+            isRight[right] = true;
+        }
+
+        //parents come after children, so going down from the root every parent's depth is known
+        int[] depths = new int[numNodes];
+        int[] nodeCodes = new int[numNodes];
+        for(int node = numNodes - 2; node >= 0; node--) {
+            depths[node] = depths[parents[node]] + 1;
+            nodeCodes[node] = (nodeCodes[parents[node]] << 1) | (isRight[node] ? 1 : 0);
+        }
+        long valueMask = (1L << valueBits) - 1;
+        for(int x = 0; x < numLeaf; x++) {
+            int value = (int) (sorted[x] & valueMask);
+            codes[value] = nodeCodes[x];
+            codeLengths[value] = (byte) Math.min(depths[x], Byte.MAX_VALUE);
+            maxCodeLength = Math.max(maxCodeLength, depths[x]);
+        }
+    }
+
+    /**
+     * gets the smallest node at the front of the two queues. On a tie the leaf is taken, as it
+     * was added to the queue before any merged node.
+     * @param weights, the frequency of each node
+     * @param leafFront, the front of the leaf queue
+     * @param numLeaf, the end of the leaf queue
+     * @param nodeFront, the front of the merged node queue
+     * @param nodeEnd, the end of the merged node queue
+     * @return the index of the smallest node
+     */
+    private static int takeSmallest(long[] weights, int leafFront, int numLeaf, int nodeFront,
+            int nodeEnd) {
+        if(leafFront < numLeaf && (nodeFront == nodeEnd
+                || weights[leafFront] <= weights[nodeFront])) {
+            return leafFront;
+        }
+        return nodeFront;
+    }
+
+    /**
+     * gets code lengths for freqs with no code longer than maxCodeLength. If the Huffman code is
+     * already short enough its lengths are used. Otherwise the lengths come from the package-merge
+     * algorithm, which gives the smallest total number of bits of any code within the limit.
+     * <P>
+     * Package-merge starts with a list of the used values sorted by frequency. Each step pairs
+     * up the items of the list into packages, whose frequency is the sum of the pair, and merges
+     * the packages with the values into a new sorted list. After maxCodeLength - 1 steps the
+     * first 2n - 2 items of the last list are taken, where n is the number of used values. Each
+     * package taken takes its pair from the list before it, and a value's code length is the
+     * number of times it is taken.
+     * pre: freqs != null, no frequency is negative, 1 <= maxCodeLength <= BITS_PER_INT and
+     * 2^maxCodeLength is at least the number of used values
+     * post: none
+     * @param freqs, the frequency of each value, 0 for unused values
+     * @param maxCodeLength, the longest code length allowed
+     * @return the code length of each value, 0 for unused values
+     */
+    public static byte[] limitedCodeLengths(int[] freqs, int maxCodeLength) {
+        return limitedCodeLengths(toLong(freqs), maxCodeLength);
+    }
+
+    /**
+     * gets code lengths for freqs with no code longer than maxCodeLength, for frequencies too
+     * large for an int. See limitedCodeLengths(int[], int).
+     * pre: freqs != null, no frequency is negative, 1 <= maxCodeLength <= BITS_PER_INT and
+     * 2^maxCodeLength is at least the number of used values
+     * post: none
+     * @param freqs, the frequency of each value, 0 for unused values
+     * @param maxCodeLength, the longest code length allowed
+     * @return the code length of each value, 0 for unused values
+     */
+    public static byte[] limitedCodeLengths(long[] freqs, int maxCodeLength) {
+        HuffmanCodeBuilder builder = new HuffmanCodeBuilder(freqs);
+        if(builder.getMaxCodeLength() <= maxCodeLength) {
+            return builder.getCodeLengths();
+        }
+
+        long[] sorted = sortUsed(freqs);
+        int numLeaf = sorted.length;
+        if(maxCodeLength < 1 || maxCodeLength > IHuffConstants.BITS_PER_INT
+                || (1L << maxCodeLength) < numLeaf) {
+            throw new IllegalArgumentException("Violation of precondition: limitedCodeLengths. "
+                    + numLeaf + " values can't have codes of at most " + maxCodeLength + " bits.");
+        }
+        int valueBits = valueBits(freqs.length);
+        long[] leafWeights = new long[numLeaf];
+        for(int x = 0; x < numLeaf; x++) {
+            leafWeights[x] = sorted[x] >>> valueBits;
+        }
+
+        //isPackage[level][i] is true if item i of the list made at that step is a package
+        boolean[][] isPackage = new boolean[maxCodeLength][];
+        isPackage[0] = new boolean[numLeaf];
+        long[] list = leafWeights;
+        for(int level = 1; level < maxCodeLength; level++) {
+            int numPackages = list.length / 2;
+            long[] merged = new long[numLeaf + numPackages];
+            isPackage[level] = new boolean[merged.length];
+            int leaf = 0;
+            int pack = 0;
+            for(int x = 0; x < merged.length; x++) {
+                long packWeight = pack < numPackages ? list[2*pack] + list[2*pack + 1] : 0;
+                if(pack == numPackages || (leaf < numLeaf && leafWeights[leaf] <= packWeight)) {
+                    merged[x] = leafWeights[leaf++];
+                }
+                else {
+                    merged[x] = packWeight;
+                    isPackage[level][x] = true;
+                    pack++;
+                }
+            }
+            list = merged;
+        }
+
+        //take the first 2n - 2 items of the last list, and the pairs of the packages taken
+        int[] lengths = new int[numLeaf];
+        int numTaken = 2*numLeaf - 2;
+        for(int level = maxCodeLength - 1; level >= 0; level--) {
+            int numPackages = 0;
+            for(int x = 0; x < numTaken; x++) {
+                if(isPackage[level][x]) {
+                    numPackages++;
+                }
+            }
+
+            //values are in sorted order in every list, so the values taken are the first ones
+            for(int x = 0; x < numTaken - numPackages; x++) {
+                lengths[x]++;
+            }
+            numTaken = 2*numPackages;
+        }
+        byte[] result = new byte[freqs.length];
+        for(int x = 0; x < numLeaf; x++) {
+            result[(int) (sorted[x] & ((1L << valueBits) - 1))] = (byte) lengths[x];
+        }
+        return result;
+    }
+
+    /**
+     * gets the codes for each value. Only the rightmost codeLength bits of a code are valid, and
+     * a code is only usable if its length is at most BITS_PER_INT.
+     * pre: none
+     * post: none
+     * @return an int array containing the code for each value
+     */
+    public int[] getCodes() {
+        return codes;
+    }
+
+    /**
+     * gets the code lengths for each value, 0 for values with a frequency of 0
+     * pre: none
+     * post: none
+     * @return a byte array containing the number of bits in the code for each value
+     */
+    public byte[] getCodeLengths() {
+        return codeLengths;
+    }
+
+    /**
+     * gets the length of the longest code
+     * pre: none
+     * post: none
+     * @return the number of bits in the longest code
+     */
+    public int getMaxCodeLength() {
+        return maxCodeLength;
+    }
+}
@@ -18,6 +18,9 @@ public class HuffmanCodeTree {
     private int size;
     private TreeNode root;
     private String[] paths;
+    private int[] codes;
+    private byte[] codeLengths;
+    private int maxCodeLength;
     private int numLeaf;
     
     /**
@@ -26,7 +29,7 @@ public class HuffmanCodeTree {
      * @param queue, a PriorityQueue of TreeNode elements
      */
     public HuffmanCodeTree(PriorityQueue<TreeNode> queue) { 
-        paths = new String[IHuffConstants.ALPH_SIZE + 1]; //add one to count for PEOF value
+        initCodeTables();
         numLeaf = 0;
         
         //make tree
@@ -56,7 +59,7 @@ public class HuffmanCodeTree {
      * @throws IOException
      */
     public HuffmanCodeTree(BitInputStream in) throws IOException {
-        paths = new String[IHuffConstants.ALPH_SIZE + 1]; //add one to count for PEOF value
+        initCodeTables();
         
         //reads in size of tree representation in bits, but value not needed since recursion is used
         int treeSizeRep = in.readBits(IHuffConstants.BITS_PER_INT);
@@ -67,7 +70,17 @@ public class HuffmanCodeTree {
         }
         size = 0;
         root = readTree(in); //makes tree with header data
-        makeMapHelp(root, ""); //makes map of paths
+        makeMapHelp(root, "", 0); //makes map of paths
+    }
+    
+    /**
+     * creates the arrays that hold the path, code and code length for each value
+     */
+    private void initCodeTables() {
+        paths = new String[IHuffConstants.ALPH_SIZE + 1]; //add one to count for PEOF value
+        codes = new int[IHuffConstants.ALPH_SIZE + 1];
+        codeLengths = new byte[IHuffConstants.ALPH_SIZE + 1];
+        maxCodeLength = 0;
     }
     
     /**
@@ -109,25 +122,34 @@ public class HuffmanCodeTree {
      * @param q, a PriorityQueue with TreeNode elements
      */
     private void makeMap(PriorityQueue<TreeNode> q) {
-        makeMapHelp(root, "");
+        makeMapHelp(root, "", 0);
     }
     
     /**
-     * uses recursion to get the paths for each leaf node.
+     * uses recursion to get the paths for each leaf node. The path is also kept as an int code
+     * (rightmost bits valid) so a whole code can be written with one writeBits call.
      * @param n, a TreeNode
      * @param path, a String of the path made so far
+     * @param code, the bits of the path made so far
      */
-    private void makeMapHelp(TreeNode n, String path) {
+    private void makeMapHelp(TreeNode n, String path, int code) {
         
         //only do something if node is in tree (if n is null, node is not in tree)
         if(n != null) {
             if(n.getLeft() == null && n.getRight() == null) { //leaf node
                 paths[n.getValue()] = path; //path is complete, set path
+                codes[n.getValue()] = code;
+                
+                //paths longer than a byte can hold are never written from the int code anyway
+                codeLengths[n.getValue()] = (byte) Math.min(path.length(), Byte.MAX_VALUE);
+                maxCodeLength = Math.max(maxCodeLength, path.length());
                 numLeaf++;
             }
             else {
-                makeMapHelp(n.getLeft(), path + "0"); //going left in tree adds "0" to path
-                makeMapHelp(n.getRight(), path + "1"); //going right in tree adds "1" to path
+                
+                //going left in tree adds "0" to path, going right adds "1"
+                makeMapHelp(n.getLeft(), path + "0", code << 1);
+                makeMapHelp(n.getRight(), path + "1", (code << 1) | 1);
             }
         }
     }
@@ -142,6 +164,37 @@ public class HuffmanCodeTree {
         return paths;
     }
     
+    /**
+     * gets the codes for each possible value. Only the rightmost codeLength bits of a code are
+     * valid, and a code is only usable if its length is at most BITS_PER_INT.
+     * pre: none
+     * post: none
+     * @return an int array containing the code for each possible value
+     */
+    public int[] getCodes() {
+        return codes;
+    }
+    
+    /**
+     * gets the code lengths for each possible value, 0 for values not in this HuffmanCodeTree
+     * pre: none
+     * post: none
+     * @return a byte array containing the number of bits in the code for each possible value
+     */
+    public byte[] getCodeLengths() {
+        return codeLengths;
+    }
+    
+    /**
+     * gets the length of the longest code in this HuffmanCodeTree
+     * pre: none
+     * post: none
+     * @return the number of bits in the longest code
+     */
+    public int getMaxCodeLength() {
+        return maxCodeLength;
+    }
+    
     /**
      * gets the size of this HuffmanCodeTree
      * pre: none
@@ -203,11 +256,28 @@ public class HuffmanCodeTree {
      * @param out, a BitOutputStream
      */
     public void writePEOF(BitOutputStream out) { 
-        for(int x = 0; x < paths[IHuffConstants.PSEUDO_EOF].length(); x++) {
-            
-            //char at x in path would be either 0 or 1, so subtracting the value of '0'
-            //will give the integer value of 0 or 1
-            out.writeBits(1, paths[IHuffConstants.PSEUDO_EOF].charAt(x) - '0');
+        writeCode(out, IHuffConstants.PSEUDO_EOF);
+    }
+    
+    /**
+     * writes the code for value with the path it has in this HuffmanCodeTree. Codes that fit in
+     * an int are written with a single writeBits call.
+     * pre: value is in this HuffmanCodeTree
+     * post: none
+     * @param out, a BitOutputStream
+     * @param value, the value whose code is written
+     */
+    public void writeCode(BitOutputStream out, int value) {
+        if(codeLengths[value] <= IHuffConstants.BITS_PER_INT) {
+            out.writeBits(codeLengths[value], codes[value]);
+        }
+        else {
+            for(int x = 0; x < paths[value].length(); x++) {
+                
+                //char at x in path would be either 0 or 1, so subtracting the value of '0'
+                //will give the integer value of 0 or 1
+                out.writeBits(1, paths[value].charAt(x) - '0');
+            }
         }
     }
     
@@ -0,0 +1,197 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A lookup table that decodes a whole Huffman code at a time instead of walking a
+ * tree one bit at a time. The root table is indexed by the next ROOT_BITS bits of
+ * input. Codes no longer than that are resolved with one lookup. Longer codes lead
+ * to a smaller second-level table indexed by the bits after the root bits, and so on
+ * for codes that are longer still, so any code of up to BITS_PER_INT bits can be decoded.
+ * <P>
+ * Each entry of the table is one int. A value entry holds the decoded value and the
+ * number of bits of its code used by that level of the table. A link entry holds the
+ * offset of the next level table and how many bits index it.
+ */
+public class HuffmanDecodeTable {
+
+    private static final int ROOT_BITS = 11;
+    private static final int SUB_BITS = 8;
+
+    private static final int LINK = 1 << 31;
+    private static final int INVALID = LINK;
+    private static final int OFFSET_SHIFT = 5;
+    private static final int WIDTH_MASK = (1 << OFFSET_SHIFT) - 1;
+    private static final int VALUE_SHIFT = 8;
+    private static final int USED_MASK = (1 << VALUE_SHIFT) - 1;
+
+    private int[] table;
+    private int size;
+    private int rootBits;
+
+    /**
+     * builds the decoding table for a set of codes.
+     * pre: codes and codeLengths have the same length, every code length is between 0 and
+     * BITS_PER_INT and the codes with a length greater than 0 form a prefix code. If no value
+     * has a code, as in a tree that is only the PSEUDO_EOF leaf, the table decodes PSEUDO_EOF
+     * without reading any bits.
+     * post: none
+     * @param codes, the code for each value, rightmost codeLength bits are valid
+     * @param codeLengths, the number of bits in the code for each value, 0 if not used
+     */
+    public HuffmanDecodeTable(int[] codes, byte[] codeLengths) {
+        if(codes.length != codeLengths.length) {
+            throw new IllegalArgumentException("Violation of precondition: HuffmanDecodeTable."
+                    + " codes and codeLengths must have the same length.");
+        }
+
+        //collect the values with codes
+        int numCodes = 0;
+        int maxLength = 0;
+        long[] sorted = new long[codes.length];
+        for(int x = 0; x < codes.length; x++) {
+            int len = codeLengths[x];
+            if(len < 0 || len > IHuffConstants.BITS_PER_INT) {
+                throw new IllegalArgumentException("Violation of precondition: "
+                        + "HuffmanDecodeTable. Code length out of range: " + len);
+            }
+            if(len > 0) {
+
+                //sort by code left-aligned in 32 bits so codes with a common prefix are together
+                long leftCode = ((codes[x] & 0xffffffffL) << (IHuffConstants.BITS_PER_INT - len))
+                        & 0xffffffffL;
+                sorted[numCodes++] = (leftCode << IHuffConstants.BITS_PER_INT) | x;
+                maxLength = Math.max(maxLength, len);
+            }
+        }
+        sorted = Arrays.copyOf(sorted, numCodes);
+        Arrays.sort(sorted);
+
+        rootBits = Math.min(ROOT_BITS, maxLength);
+        table = new int[1 << rootBits];
+        Arrays.fill(table, INVALID);
+        size = table.length;
+        if(numCodes == 0) {
+            table[0] = IHuffConstants.PSEUDO_EOF << VALUE_SHIFT; //uses no bits at all
+        }
+        else {
+            buildLevel(sorted, 0, numCodes, codeLengths, 0, rootBits, 0);
+        }
+    }
+
+    /**
+     * fills the table starting at base with the codes in sorted[lo, hi). All of these codes share
+     * the same first consumed bits, and the table at base is indexed by the next bits bits.
+     * @param sorted, left-aligned codes in the high 32 bits and values in the low 32 bits
+     * @param lo, the first index in sorted to add
+     * @param hi, one past the last index in sorted to add
+     * @param codeLengths, the number of bits in the code for each value
+     * @param consumed, the number of bits used by the levels before this one
+     * @param bits, the number of bits that index this level
+     * @param base, the offset of this level in the table
+     */
+    private void buildLevel(long[] sorted, int lo, int hi, byte[] codeLengths, int consumed,
+            int bits, int base) {
+        int pos = lo;
+        while(pos < hi) {
+            int value = (int) sorted[pos];
+            int index = indexOf(sorted[pos], consumed, bits);
+            int remaining = codeLengths[value] - consumed;
+            if(remaining <= bits) {
+
+                //code ends in this level, so every index starting with its last bits decodes it
+                int entry = (value << VALUE_SHIFT) | remaining;
+                Arrays.fill(table, base + index, base + index + (1 << (bits - remaining)), entry);
+                pos++;
+            }
+            else {
+
+                //code is longer than this level, group all codes sharing this index in a sub-table
+                int end = pos;
+                int maxLength = 0;
+                while(end < hi && indexOf(sorted[end], consumed, bits) == index) {
+                    maxLength = Math.max(maxLength, codeLengths[(int) sorted[end]]);
+                    end++;
+                }
+                int subBits = Math.min(SUB_BITS, maxLength - consumed - bits);
+                int subBase = allocate(1 << subBits);
+                table[base + index] = LINK | (subBase << OFFSET_SHIFT) | subBits;
+                buildLevel(sorted, pos, end, codeLengths, consumed + bits, subBits, subBase);
+                pos = end;
+            }
+        }
+    }
+
+    /**
+     * gets the bits of a left-aligned code that index a level of the table
+     * @param sortKey, a left-aligned code in the high 32 bits
+     * @param consumed, the number of bits used by the levels before this one
+     * @param bits, the number of bits that index this level
+     * @return the index into the level
+     */
+    private static int indexOf(long sortKey, int consumed, int bits) {
+        long leftCode = sortKey >>> IHuffConstants.BITS_PER_INT;
+        return (int) ((leftCode >>> (IHuffConstants.BITS_PER_INT - consumed - bits))
+                & ((1L << bits) - 1));
+    }
+
+    /**
+     * adds room for another level to the end of the table
+     * @param entries, the number of entries in the new level
+     * @return the offset of the new level
+     */
+    private int allocate(int entries) {
+        if(size + entries > table.length) {
+            table = Arrays.copyOf(table, Math.max(table.length * 2, size + entries));
+        }
+        Arrays.fill(table, size, size + entries, INVALID);
+        size += entries;
+        return size - entries;
+    }
+
+    /**
+     * Decodes the next value from in, using exactly the bits of its code.
+     * pre: in != null
+     * post: the code of the value returned has been read from in
+     * @param in, a BlockBitInputStream positioned at the start of a code
+     * @return the value decoded, or -1 if in ends before the end of the code
+     * @throws IOException if the bits read are not a code in the table or in can't be read
+     */
+    public int decodeValue(BlockBitInputStream in) throws IOException {
+        
+        //look up the next bits, going down a level for each link entry
+        int bits = rootBits;
+        int entry = table[in.peekBits(bits)];
+        while(entry < 0) {
+            if(entry == INVALID) {
+                throw new IOException("Something is wrong with the compressed data.");
+            }
+            if(!in.skipBits(bits)) {
+                return -1;
+            }
+            bits = entry & WIDTH_MASK;
+            entry = table[((entry & ~LINK) >>> OFFSET_SHIFT) + in.peekBits(bits)];
+        }
+        return in.skipBits(entry & USED_MASK) ? entry >>> VALUE_SHIFT : -1;
+    }
+
+    /**
+     * Decodes values from in and writes each one to out with BITS_PER_WORD bits until the
+     * PSEUDO_EOF value is decoded or the input runs out.
+     * pre: in != null, out != null
+     * post: all of in is read if PSEUDO_EOF is not found
+     * @param in, a BlockBitInputStream positioned at the start of a code
+     * @param out, a BitOutputStream
+     * @return the number of values written to out
+     * @throws IOException if a code is not in the table or in can't be read
+     */
+    public long decode(BlockBitInputStream in, BitOutputStream out) throws IOException {
+        long numValues = 0;
+        int value = decodeValue(in);
+        while(value != -1 && value != IHuffConstants.PSEUDO_EOF) {
+            out.writeBits(IHuffConstants.BITS_PER_WORD, value);
+            numValues++;
+            value = decodeValue(in);
+        }
+        return numValues;
+    }
+}
@@ -0,0 +1,86 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Uncompresses STORE_CUSTOM streams without keeping any state between calls, so one decoder can
+ * be shared by any number of threads. The model read from each stream, and the bit streams
+ * around it, are local to the call. Streams written by HuffmanEncoder and by SimpleHuffProcessor
+ * with the custom header format can be read.
+ * <P>
+ * Unlike SimpleHuffProcessor, the streams passed in are not closed and the magic number is always
+ * checked. Since the input is read a block at a time, bytes after the end of the compressed
+ * stream may have been read from an InputStream. To read several compressed streams one after
+ * another from one input, such as a socket, wrap it in one BlockBitInputStream and pass that to
+ * each call; each call stops at the byte after the stream it reads.
+ */
+public class HuffmanDecoder implements IHuffConstants {
+
+    /**
+     * uncompresses a stream written by HuffmanEncoder.compress
+     * pre: in != null, out != null
+     * post: the compressed stream has been read from in and out has been flushed
+     * @param in, the compressed stream
+     * @param out, the stream the uncompressed bytes are written to
+     * @return the number of bits written
+     * @throws IOException if in is not a STORE_CUSTOM stream, in can't be read or out can't be
+     * written
+     */
+    public long uncompress(InputStream in, OutputStream out) throws IOException {
+        return uncompress(new BlockBitInputStream(in), out);
+    }
+
+    /**
+     * uncompresses the next stream written by HuffmanEncoder.compress and leaves in at the byte
+     * after it, so the stream that follows can be read by another call
+     * pre: in != null, out != null, in is at the start of a byte
+     * post: the compressed stream, with the padding of its last byte, has been read from in and
+     * out has been flushed
+     * @param in, a BlockBitInputStream positioned at the start of the compressed stream
+     * @param out, the stream the uncompressed bytes are written to
+     * @return the number of bits written
+     * @throws IOException if in is not a STORE_CUSTOM stream, in can't be read or out can't be
+     * written
+     */
+    public long uncompress(BlockBitInputStream in, OutputStream out) throws IOException {
+        if(in.readBits(BITS_PER_INT) != MAGIC_NUMBER) {
+            throw new IOException("Compressed stream did not start with huff magic number.");
+        }
+        if(in.readBits(BITS_PER_INT) != STORE_CUSTOM) {
+            throw new IOException("Compressed stream does not use the custom header format.");
+        }
+        HuffmanModel model = HuffmanModel.read(in);
+        long bits = decode(model, in, out);
+        in.skipToByte(); //the encoder pads the last byte of each stream
+        return bits;
+    }
+
+    /**
+     * decodes values from in with model until the code of PSEUDO_EOF and writes them to out
+     * pre: model != null, in != null, out != null
+     * post: the codes have been read from in and out has been flushed
+     * @param model, the model the codes were written with
+     * @param in, a BlockBitInputStream positioned at the start of the codes
+     * @param out, the stream the uncompressed bytes are written to
+     * @return the number of bits written
+     * @throws IOException if a code is not valid, in ends before PSEUDO_EOF, in can't be read
+     * or out can't be written
+     */
+    public long decode(HuffmanModel model, BlockBitInputStream in, OutputStream out)
+            throws IOException {
+        HuffmanDecodeTable table = model.getDecodeTable();
+        BitOutputStream bitOut = new BlockBitOutputStream(out);
+        long numValues = 0;
+        int value = table.decodeValue(in);
+        while(value != PSEUDO_EOF) {
+            if(value == -1) {
+                throw new IOException("Compressed stream ended before the end of the data.");
+            }
+            bitOut.writeBits(BITS_PER_WORD, value);
+            numValues++;
+            value = table.decodeValue(in);
+        }
+        bitOut.flush();
+        return numValues * BITS_PER_WORD;
+    }
+}
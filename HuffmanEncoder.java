@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compresses streams to the STORE_CUSTOM format without keeping any state between calls, so one
+ * encoder can be shared by any number of threads. Each call either makes a HuffmanModel for its
+ * own input or uses a model given to it, and everything else it needs is local to the call.
+ * Files it writes can be read by HuffmanDecoder and by SimpleHuffProcessor.
+ * <P>
+ * Unlike SimpleHuffProcessor, the streams passed in are not closed. The output is flushed so the
+ * caller can keep using it, for example to write several compressed streams to one socket. Each
+ * stream ends at a byte boundary, and HuffmanDecoder reads them back one after another from one
+ * BlockBitInputStream over the socket.
+ */
+public class HuffmanEncoder implements IHuffConstants {
+
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final int maxCodeLength;
+    private final ForkJoinPool pool;
+
+    /**
+     * makes an encoder whose models have codes up to CanonicalHuffmanCode.MAX_CODE_LENGTH bits
+     * and that counts on the common pool
+     * pre: none
+     * post: none
+     */
+    public HuffmanEncoder() {
+        this(CanonicalHuffmanCode.MAX_CODE_LENGTH, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * makes an encoder whose models have codes up to maxCodeLength bits
+     * pre: 2^maxCodeLength > ALPH_SIZE, maxCodeLength <= CanonicalHuffmanCode.MAX_CODE_LENGTH,
+     * pool != null
+     * post: none
+     * @param maxCodeLength, the longest code length allowed
+     * @param pool, the pool used to count the input
+     */
+    public HuffmanEncoder(int maxCodeLength, ForkJoinPool pool) {
+        if(maxCodeLength > CanonicalHuffmanCode.MAX_CODE_LENGTH
+                || (1 << maxCodeLength) <= ALPH_SIZE || pool == null) {
+            throw new IllegalArgumentException("Violation of precondition: HuffmanEncoder. "
+                    + "Code length limit out of range or pool is null.");
+        }
+        this.maxCodeLength = maxCodeLength;
+        this.pool = pool;
+    }
+
+    /**
+     * counts all of in and makes the model for its bytes
+     * pre: in != null
+     * post: all of in has been read
+     * @param in, the stream to count
+     * @return the model for the bytes of in
+     * @throws IOException if in can't be read
+     */
+    public HuffmanModel buildModel(InputStream in) throws IOException {
+        long[] freqs = new long[ALPH_SIZE];
+        FrequencyCounter.count(in, freqs, pool);
+        return HuffmanModel.fromFrequencies(freqs, maxCodeLength);
+    }
+
+    /**
+     * compresses in to out with a model made for in, reading in only once. The input is kept by
+     * a SpillBuffer while it is counted, then coded from the copy kept.
+     * pre: in != null, out != null
+     * post: all of in has been read and out has been flushed
+     * @param in, the stream to compress
+     * @param out, the stream the compressed file is written to
+     * @return the number of bits written
+     * @throws IOException if in can't be read or out can't be written
+     */
+    public long compress(InputStream in, OutputStream out) throws IOException {
+        SpillBuffer retained = new SpillBuffer();
+        try {
+            HuffmanModel model = buildModel(retained.tee(in));
+            return compress(model, retained.getInputStream(), out);
+        }
+        finally {
+            retained.close();
+        }
+    }
+
+    /**
+     * compresses in to out with a model made ahead of time, so the input is read only once and
+     * nothing is kept
+     * pre: model != null, in != null, out != null, every byte of in has a code in model
+     * post: all of in has been read and out has been flushed
+     * @param model, the model to code with
+     * @param in, the stream to compress
+     * @param out, the stream the compressed file is written to
+     * @return the number of bits written
+     * @throws IOException if in can't be read, out can't be written or in has a byte that has
+     * no code in model
+     */
+    public long compress(HuffmanModel model, InputStream in, OutputStream out)
+            throws IOException {
+        BitOutputStream bitOut = new BlockBitOutputStream(out);
+        bitOut.writeBits(BITS_PER_INT, MAGIC_NUMBER);
+        bitOut.writeBits(BITS_PER_INT, STORE_CUSTOM);
+        model.write(bitOut);
+        long bits = BITS_PER_INT * 2 + model.headerBits() + encode(model, in, bitOut);
+        bitOut.flush();
+        return bits;
+    }
+
+    /**
+     * writes the code of every byte of in, then the code of PSEUDO_EOF, with no header. A
+     * MappedFileInputStream is read a mapped window at a time without copying.
+     * pre: model != null, in != null, out != null
+     * post: all of in has been read, out has not been flushed
+     * @param model, the model to code with
+     * @param in, the stream to code
+     * @param out, the stream the codes are written to
+     * @return the number of bits written
+     * @throws IOException if in can't be read or in has a byte that has no code in model
+     */
+    public long encode(HuffmanModel model, InputStream in, BitOutputStream out)
+            throws IOException {
+        int[] codes = model.getCodes();
+        byte[] codeLengths = model.getCodeLengths();
+        long bits = 0;
+        if(in instanceof MappedFileInputStream) {
+            MappedFileInputStream mapped = (MappedFileInputStream) in;
+            ByteBuffer window = mapped.nextWindow();
+            while(window != null) {
+                bits += encode(codes, codeLengths, window, out);
+                window = mapped.nextWindow();
+            }
+        }
+        else {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int numRead = in.read(chunk);
+            while(numRead != -1) {
+                bits += encode(codes, codeLengths, ByteBuffer.wrap(chunk, 0, numRead), out);
+                numRead = in.read(chunk);
+            }
+        }
+        out.writeBits(codeLengths[PSEUDO_EOF], codes[PSEUDO_EOF]);
+        return bits + codeLengths[PSEUDO_EOF];
+    }
+
+    /**
+     * writes the code of every byte between the position and limit of bytes
+     * @param codes, the code of each value
+     * @param codeLengths, the code length of each value
+     * @param bytes, the bytes to code
+     * @param out, the stream the codes are written to
+     * @return the number of bits written
+     * @throws IOException if a byte has no code
+     */
+    private static long encode(int[] codes, byte[] codeLengths, ByteBuffer bytes,
+            BitOutputStream out) throws IOException {
+        long bits = 0;
+        int end = bytes.limit();
+        for(int x = bytes.position(); x < end; x++) {
+            int value = bytes.get(x) & 0xff;
+            int length = codeLengths[value];
+            if(length == 0) {
+                throw new IOException("The model has no code for the value " + value + ".");
+            }
+            out.writeBits(length, codes[value]);
+            bits += length;
+        }
+        return bits;
+    }
+}
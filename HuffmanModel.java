@@ -0,0 +1,176 @@
+import java.io.IOException;
+
+/**
+ * An immutable Huffman code for the byte values and PSEUDO_EOF: the code and code length of each
+ * value, and a table to decode them. The code is canonical, so it is stored the same way as the
+ * STORE_CUSTOM header, and no code is longer than CanonicalHuffmanCode.MAX_CODE_LENGTH.
+ * <P>
+ * Nothing about a model changes after it is made and nothing it returns can change it, so one
+ * model can be shared by any number of threads, for example by a HuffmanEncoder and
+ * HuffmanDecoder coding many streams at once with a code made ahead of time.
+ */
+public class HuffmanModel implements IHuffConstants {
+
+    private final int[] codes;
+    private final byte[] codeLengths;
+    private final CanonicalHuffmanCode canonicalCode;
+    private final HuffmanDecodeTable decodeTable;
+
+    /**
+     * makes a model for a canonical code
+     * @param canonicalCode, a code for ALPH_SIZE + 1 values
+     */
+    private HuffmanModel(CanonicalHuffmanCode canonicalCode) {
+        this.canonicalCode = canonicalCode;
+        codes = canonicalCode.getCodes().clone();
+        codeLengths = canonicalCode.getCodeLengths().clone();
+        decodeTable = new HuffmanDecodeTable(codes, codeLengths);
+    }
+
+    /**
+     * makes the model for a set of byte frequencies, with no code longer than
+     * CanonicalHuffmanCode.MAX_CODE_LENGTH. PSEUDO_EOF is given a frequency of 1.
+     * pre: freqs != null, freqs.length == ALPH_SIZE, no frequency is negative
+     * post: none
+     * @param freqs, the frequency of each byte value
+     * @return the model for freqs
+     */
+    public static HuffmanModel fromFrequencies(long[] freqs) {
+        return fromFrequencies(freqs, CanonicalHuffmanCode.MAX_CODE_LENGTH);
+    }
+
+    /**
+     * makes the model for a set of byte frequencies, with no code longer than maxCodeLength.
+     * PSEUDO_EOF is given a frequency of 1.
+     * pre: freqs != null, freqs.length == ALPH_SIZE, no frequency is negative,
+     * 2^maxCodeLength > ALPH_SIZE and maxCodeLength <= CanonicalHuffmanCode.MAX_CODE_LENGTH
+     * post: none
+     * @param freqs, the frequency of each byte value
+     * @param maxCodeLength, the longest code length allowed
+     * @return the model for freqs
+     */
+    public static HuffmanModel fromFrequencies(long[] freqs, int maxCodeLength) {
+        if(freqs == null || freqs.length != ALPH_SIZE) {
+            throw new IllegalArgumentException("Violation of precondition: fromFrequencies. "
+                    + "freqs must hold a frequency for each of the " + ALPH_SIZE + " values.");
+        }
+        if(maxCodeLength > CanonicalHuffmanCode.MAX_CODE_LENGTH
+                || (1 << maxCodeLength) <= ALPH_SIZE) {
+            throw new IllegalArgumentException("Violation of precondition: fromFrequencies. "
+                    + "Code length limit out of range: " + maxCodeLength);
+        }
+        long[] weights = new long[ALPH_SIZE + 1];
+        System.arraycopy(freqs, 0, weights, 0, ALPH_SIZE);
+        weights[PSEUDO_EOF] = 1;
+        return new HuffmanModel(CanonicalHuffmanCode.fromFrequencies(weights, maxCodeLength));
+    }
+
+    /**
+     * reads a model written by write
+     * pre: in != null
+     * post: the model has been read from in
+     * @param in, a BlockBitInputStream positioned at the start of the model
+     * @return the model read
+     * @throws IOException if the model is not valid or in can't be read
+     */
+    public static HuffmanModel read(BlockBitInputStream in) throws IOException {
+        return new HuffmanModel(CanonicalHuffmanCode.read(in, ALPH_SIZE + 1));
+    }
+
+    /**
+     * writes the code lengths of this model, the same way as the STORE_CUSTOM header
+     * pre: out != null
+     * post: the model has been written to out
+     * @param out, a BitOutputStream
+     */
+    public void write(BitOutputStream out) {
+        canonicalCode.write(out);
+    }
+
+    /**
+     * gets the number of bits write will write
+     * pre: none
+     * post: none
+     * @return the number of bits it takes to store this model
+     */
+    public int headerBits() {
+        return canonicalCode.headerBits();
+    }
+
+    /**
+     * gets the number of bits it takes to code data with the given byte frequencies with this
+     * model, including the code for PSEUDO_EOF but not the model itself
+     * pre: freqs != null, freqs.length == ALPH_SIZE, every value with a frequency has a code
+     * post: none
+     * @param freqs, the frequency of each byte value
+     * @return the number of bits of the coded data
+     */
+    public long compressedBits(long[] freqs) {
+        long bits = codeLengths[PSEUDO_EOF];
+        for(int x = 0; x < ALPH_SIZE; x++) {
+            bits += freqs[x] * codeLengths[x];
+        }
+        return bits;
+    }
+
+    /**
+     * gets the code of a value. Only the rightmost getCodeLength(value) bits are valid.
+     * pre: 0 <= value <= PSEUDO_EOF
+     * post: none
+     * @param value, a byte value or PSEUDO_EOF
+     * @return the code of value
+     */
+    public int getCode(int value) {
+        return codes[value];
+    }
+
+    /**
+     * gets the number of bits in the code of a value
+     * pre: 0 <= value <= PSEUDO_EOF
+     * post: none
+     * @param value, a byte value or PSEUDO_EOF
+     * @return the length of the code of value, 0 if value has no code
+     */
+    public int getCodeLength(int value) {
+        return codeLengths[value];
+    }
+
+    /**
+     * gets the codes of every value
+     * pre: none
+     * post: none
+     * @return a copy of the code of each value
+     */
+    public int[] getCodes() {
+        return codes.clone();
+    }
+
+    /**
+     * gets the code lengths of every value
+     * pre: none
+     * post: none
+     * @return a copy of the code length of each value, 0 for values with no code
+     */
+    public byte[] getCodeLengths() {
+        return codeLengths.clone();
+    }
+
+    /**
+     * gets the length of the longest code
+     * pre: none
+     * post: none
+     * @return the number of bits in the longest code
+     */
+    public int getMaxCodeLength() {
+        return canonicalCode.getMaxCodeLength();
+    }
+
+    /**
+     * gets the table that decodes this model's codes. The table is only read while decoding,
+     * so it can be used by many threads at once.
+     * @return the decode table
+     */
+    HuffmanDecodeTable getDecodeTable() {
+        return decodeTable;
+    }
+}
@@ -58,6 +58,73 @@ public interface IHuffConstants {
      * A value in files compressed with a HuffProcessor indicating
      * the code values are stored in a custom format. Something
      * besides Standard Count Format or Standard Tree Format.
+     * The header holds only the code lengths of a canonical code,
+     * see <code>CanonicalHuffmanCode</code>.
      */      
     public static final int STORE_CUSTOM = MAGIC_NUMBER | 4;
+
+    /**
+     * A value in files compressed with a HuffProcessor indicating
+     * the data is split into blocks that are compressed independently,
+     * each with its own canonical code, followed by an index of where
+     * each block starts. See <code>BlockCodec</code>.
+     */
+    public static final int STORE_BLOCKS = MAGIC_NUMBER | 8;
+
+    /**
+     * A value in files compressed with a HuffProcessor indicating
+     * there is no header: the code adapts to the data as it is read,
+     * the same way it did when it was written.
+     * See <code>AdaptiveHuffmanTree</code>.
+     */
+    public static final int STORE_ADAPTIVE = MAGIC_NUMBER | 16;
+
+    /**
+     * A value in files compressed with a HuffProcessor indicating
+     * a header of counts like STORE_COUNTS, but each count takes only
+     * as many bytes as it needs, so small files have a smaller header
+     * and counts of 2^31 or more can be stored.
+     */
+    public static final int STORE_COUNTS_VAR = MAGIC_NUMBER | 32;
+
+    /**
+     * A value in files compressed with a HuffProcessor indicating
+     * the input is stored as it is, after its length in 64 bits.
+     * Used when coding the input would not make it smaller.
+     */
+    public static final int STORE_RAW = MAGIC_NUMBER | 64;
+
+    /**
+     * A value in files compressed with a HuffProcessor indicating
+     * each byte is coded with a code chosen by the byte before it,
+     * see ContextHuffmanCode.
+     */
+    public static final int STORE_CONTEXT = MAGIC_NUMBER | 128;
+
+    /**
+     * A value in files compressed with a HuffProcessor indicating
+     * the input is coded as symbols of 8 to 16 bits instead of bytes,
+     * see WideSymbolCode.
+     */
+    public static final int STORE_WIDE = MAGIC_NUMBER | 256;
+
+    /**
+     * A value in files compressed with a HuffProcessor indicating
+     * runs of a byte are coded with run symbols before Huffman coding,
+     * see RunLengthHuffmanCode.
+     */
+    public static final int STORE_RLE = MAGIC_NUMBER | 4096;
+
+    /**
+     * A value in files compressed with a HuffProcessor indicating
+     * blocks laid out as in STORE_BLOCKS, where each block may also be
+     * Burrows-Wheeler transformed, see BlockCodec and BurrowsWheelerCode.
+     */
+    public static final int STORE_BWT = MAGIC_NUMBER | 1024;
+
+    /**
+     * A value in files compressed with a HuffProcessor indicating
+     * repeated strings are coded as LZ77 matches, see LzHuffmanCode.
+     */
+    public static final int STORE_LZ = MAGIC_NUMBER | 2048;
 }
@@ -1,3 +1,6 @@
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -57,6 +60,75 @@ public interface IHuffProcessor extends IHuffConstants {
     public int compress(InputStream in, OutputStream out, boolean force) throws IOException;
 
 
+    /**
+     * Compresses input to output in one call. The output is written even if it is
+     * larger than the input. See <code>compress(in, out, headerFormat, force)</code>.
+     * @param in is the stream being compressed (NOT a BitInputStream)
+     * @param out is bound to a file/stream to which bits are written
+     * for the compressed file (not a BitOutputStream)
+     * @param headerFormat a constant from IHuffProcessor that determines what kind of
+     * header to use
+     * @return the number of bits written.
+     * @throws IOException if an error occurs while reading from the input file or
+     * writing to the output file.
+     */
+    public default int compress(InputStream in, OutputStream out, int headerFormat)
+            throws IOException {
+        return compress(in, out, headerFormat, true);
+    }
+
+    /**
+     * Compresses input to output in one call, by <code>preprocessCompress</code> and then
+     * <code>compress</code>. A file or byte array is read a second time from where it
+     * started, a MappedFileInputStream by opening its file again so both passes read the
+     * mapped windows without copying them. Any other stream, such as a pipe or socket, is read only once: the input
+     * is kept, in memory or spilled to a temporary file, while it is counted, and then
+     * compressed from the copy kept.
+     * @param in is the stream being compressed (NOT a BitInputStream)
+     * @param out is bound to a file/stream to which bits are written
+     * for the compressed file (not a BitOutputStream)
+     * @param headerFormat a constant from IHuffProcessor that determines what kind of
+     * header to use
+     * @param force if this is true create the output file even if it is larger than the input file.
+     * If this is false do not create the output file if it is larger than the input file.
+     * @return the number of bits written.
+     * @throws IOException if an error occurs while reading from the input file or
+     * writing to the output file.
+     */
+    public default int compress(InputStream in, OutputStream out, int headerFormat,
+            boolean force) throws IOException {
+        if (in instanceof MappedFileInputStream) {
+            MappedFileInputStream again = ((MappedFileInputStream) in).reopen();
+            try {
+                preprocessCompress(in, headerFormat);
+                return compress(again, out, force);
+            }
+            finally {
+                again.close();
+            }
+        }
+        if (in instanceof ByteArrayInputStream) {
+            in.mark(0);
+            preprocessCompress(keepOpen(in), headerFormat);
+            in.reset();
+            return compress(in, out, force);
+        }
+        long start = in instanceof FileInputStream ? filePosition((FileInputStream) in) : -1;
+        if (start != -1) {
+            preprocessCompress(keepOpen(in), headerFormat);
+            ((FileInputStream) in).getChannel().position(start);
+            return compress(in, out, force);
+        }
+        SpillBuffer retained = new SpillBuffer();
+        try {
+            preprocessCompress(retained.tee(in), headerFormat);
+            return compress(retained.getInputStream(), out, force);
+        }
+        finally {
+            retained.close(); // deletes the temporary file if the input was spilled
+        }
+    }
+
     /**
      * Uncompress a previously compressed stream in, writing the
      * uncompressed bits/data to out.
@@ -68,4 +140,28 @@ public interface IHuffProcessor extends IHuffConstants {
      */
     public int uncompress(InputStream in, OutputStream out) throws IOException;
 
+    /**
+     * Wraps a stream so that closing the wrapper leaves it open to be read again.
+     * @param in is the stream to wrap
+     * @return a stream that reads in and is not closed with it
+     */
+    private static InputStream keepOpen(InputStream in) {
+        return new FilterInputStream(in) {
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Finds where a file stream will read next, so it can be read again from there.
+     * @param in is the stream of a file
+     * @return the position of in, or -1 if in can't be positioned, as for a pipe
+     */
+    private static long filePosition(FileInputStream in) {
+        try {
+            return in.getChannel().position();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
 }
@@ -0,0 +1,616 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * LZ77 matching in front of two canonical Huffman codes, for the STORE_LZ format, laid out much
+ * like DEFLATE. A string that was seen in the last window of bytes is coded as its length and
+ * its distance back, so repeated substrings, which Huffman coding of single bytes can't use,
+ * cost a few bits each.
+ * <P>
+ * The first code is for the literal/length alphabet: the ALPH_SIZE byte values, PSEUDO_EOF to
+ * end the data, then the 29 DEFLATE length symbols for lengths MIN_MATCH to MAX_MATCH, each
+ * followed by its extra bits. The second is for the distance alphabet: two symbols for each bit
+ * of the window size, which for a 32K window are the 30 DEFLATE distance symbols, each followed
+ * by its extra bits. The header is the number of window bits, 8 bits, then the two codes, each
+ * stored with CanonicalHuffmanCode.write.
+ * <P>
+ * Matches are found with hash chains: the start of every 3 byte string is put in a chain for
+ * its hash, and a match is looked for by following the chain back through the window. The
+ * level sets how far to follow the chains and whether to use lazy matching, where a match is
+ * put off by a byte if the match starting at the next byte is longer. Level 1 is the fastest and
+ * level 9 finds the most matches. The input is read a chunk at a time and only the window and
+ * the bytes ahead of it are kept, so any size of input can be coded.
+ */
+public class LzHuffmanCode implements IHuffConstants {
+
+    public static final int MIN_LEVEL = 1;
+    public static final int MAX_LEVEL = 9;
+    public static final int DEFAULT_LEVEL = 6;
+    public static final int MIN_WINDOW_BITS = 10;
+    public static final int MAX_WINDOW_BITS = 24;
+    public static final int DEFAULT_WINDOW_BITS = 15;
+
+    private static final int MIN_MATCH = 3;
+    private static final int MAX_MATCH = 258;
+    private static final int MIN_LOOKAHEAD = MAX_MATCH + MIN_MATCH + 1;
+    private static final int NUM_LENGTH_SYMBOLS = 29;
+    private static final int FIRST_LENGTH_SYMBOL = PSEUDO_EOF + 1;
+    private static final int LIT_LEN_SIZE = FIRST_LENGTH_SYMBOL + NUM_LENGTH_SYMBOLS;
+    private static final int BITS_PER_WINDOW_BITS = 8;
+    private static final int MIN_HASH_BITS = 16;
+    private static final int MAX_HASH_BITS = 22;
+    private static final int MIN_LOOKAHEAD_BUFFER = 1 << 18;
+    private static final int NIL = -1;
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    //the settings of each level: chain steps, the length that is good enough to stop looking,
+    //the longest match that is put off for a lazy match, 0 for none, and the length that cuts
+    //the chain steps to a quarter when a lazy match is looked for
+    private static final int[] MAX_CHAIN = {0, 4, 8, 32, 16, 32, 128, 256, 1024, 4096};
+    private static final int[] NICE_LENGTH = {0, 8, 16, 32, 16, 32, 128, 128, 258, 258};
+    private static final int[] MAX_LAZY = {0, 0, 0, 0, 4, 16, 16, 32, 128, 258};
+    private static final int[] GOOD_LENGTH = {0, 4, 4, 4, 4, 8, 8, 8, 32, 32};
+
+    private static final int[] LENGTH_BASE = new int[NUM_LENGTH_SYMBOLS];
+    private static final int[] LENGTH_EXTRA_BITS = new int[NUM_LENGTH_SYMBOLS];
+    private static final byte[] LENGTH_SYMBOL = new byte[MAX_MATCH + 1];
+
+    static {
+        //lengths 3 to 10 have no extra bits, then each 4 symbols have one more, up to 258
+        int base = MIN_MATCH;
+        for(int x = 0; x < NUM_LENGTH_SYMBOLS - 1; x++) {
+            LENGTH_EXTRA_BITS[x] = x < 8 ? 0 : (x - 4) / 4;
+            LENGTH_BASE[x] = base;
+            base += 1 << LENGTH_EXTRA_BITS[x];
+        }
+        LENGTH_BASE[NUM_LENGTH_SYMBOLS - 1] = MAX_MATCH;
+        for(int x = 0; x < NUM_LENGTH_SYMBOLS; x++) {
+            int end = x + 1 < NUM_LENGTH_SYMBOLS ? LENGTH_BASE[x + 1] : MAX_MATCH + 1;
+            for(int length = LENGTH_BASE[x]; length < end; length++) {
+                LENGTH_SYMBOL[length] = (byte) x;
+            }
+        }
+    }
+
+    private int windowBits;
+    private CanonicalHuffmanCode litLenCode;
+    private CanonicalHuffmanCode distanceCode;
+    private int[] litLenCodes;
+    private byte[] litLenLengths;
+    private int[] distanceCodes;
+    private byte[] distanceLengths;
+
+    /**
+     * makes the model for a window size and its two codes
+     * @param windowBits, the number of bits in the window size
+     * @param litLenCode, the code of the literal/length alphabet
+     * @param distanceCode, the code of the distance alphabet
+     */
+    private LzHuffmanCode(int windowBits, CanonicalHuffmanCode litLenCode,
+            CanonicalHuffmanCode distanceCode) {
+        this.windowBits = windowBits;
+        this.litLenCode = litLenCode;
+        this.distanceCode = distanceCode;
+        litLenCodes = litLenCode.getCodes();
+        litLenLengths = litLenCode.getCodeLengths();
+        distanceCodes = distanceCode.getCodes();
+        distanceLengths = distanceCode.getCodeLengths();
+    }
+
+    /**
+     * checks that a level and window size can be used
+     * pre: none
+     * post: none
+     * @param level, the level
+     * @param windowBits, the number of bits in the window size
+     * @throws IllegalArgumentException if either is out of range
+     */
+    public static void checkSettings(int level, int windowBits) {
+        if(level < MIN_LEVEL || level > MAX_LEVEL) {
+            throw new IllegalArgumentException("Violation of precondition: level must be "
+                    + "between " + MIN_LEVEL + " and " + MAX_LEVEL + ": " + level);
+        }
+        if(windowBits < MIN_WINDOW_BITS || windowBits > MAX_WINDOW_BITS) {
+            throw new IllegalArgumentException("Violation of precondition: window bits must be "
+                    + "between " + MIN_WINDOW_BITS + " and " + MAX_WINDOW_BITS + ": " + windowBits);
+        }
+    }
+
+    /**
+     * gets the number of symbols in the distance alphabet for a window size
+     * pre: MIN_WINDOW_BITS <= windowBits <= MAX_WINDOW_BITS
+     * post: none
+     * @param windowBits, the number of bits in the window size
+     * @return the number of distance symbols
+     */
+    public static int numDistanceSymbols(int windowBits) {
+        return 2 * windowBits;
+    }
+
+    /**
+     * finds the matches in all of in and adds the number of times each symbol occurs to the
+     * counts. PSEUDO_EOF is counted once.
+     * pre: in != null, the settings are valid, litLenCounts.length == numLitLenSymbols(),
+     * distanceCounts.length == numDistanceSymbols(windowBits)
+     * post: all of in has been read
+     * @param in, the stream to count
+     * @param level, how hard to look for matches
+     * @param windowBits, the number of bits in the window size
+     * @param litLenCounts, the counts of the literal/length alphabet to add to
+     * @param distanceCounts, the counts of the distance alphabet to add to
+     * @return the number of bytes read
+     * @throws IOException if in can't be read
+     */
+    public static long count(InputStream in, int level, int windowBits, long[] litLenCounts,
+            long[] distanceCounts) throws IOException {
+        MatchFinder finder = new MatchFinder(level, windowBits) {
+            void literal(int value) {
+                litLenCounts[value]++;
+            }
+
+            void match(int length, int distance) {
+                litLenCounts[FIRST_LENGTH_SYMBOL + LENGTH_SYMBOL[length]]++;
+                distanceCounts[distanceSymbol(distance)]++;
+            }
+        };
+        long numBytes = finder.findAll(in);
+        litLenCounts[PSEUDO_EOF]++;
+        return numBytes;
+    }
+
+    /**
+     * gets the number of symbols in the literal/length alphabet
+     * pre: none
+     * post: none
+     * @return the size of the literal/length alphabet
+     */
+    public static int numLitLenSymbols() {
+        return LIT_LEN_SIZE;
+    }
+
+    /**
+     * makes the codes for symbol counts
+     * pre: the counts are from count with the same window bits, no count is negative
+     * post: none
+     * @param windowBits, the number of bits in the window size
+     * @param litLenCounts, the counts of the literal/length alphabet
+     * @param distanceCounts, the counts of the distance alphabet
+     * @return the codes for the counts
+     */
+    public static LzHuffmanCode fromCounts(int windowBits, long[] litLenCounts,
+            long[] distanceCounts) {
+        CanonicalHuffmanCode litLenCode = CanonicalHuffmanCode.fromFrequencies(litLenCounts,
+                CanonicalHuffmanCode.MAX_CODE_LENGTH);
+
+        //a distance code is stored even with no matches, so give it a symbol
+        long[] counts = distanceCounts;
+        boolean used = false;
+        for(long count : counts) {
+            used |= count > 0;
+        }
+        if(!used) {
+            counts = counts.clone();
+            counts[0] = 1;
+        }
+        CanonicalHuffmanCode distanceCode = CanonicalHuffmanCode.fromFrequencies(counts,
+                CanonicalHuffmanCode.MAX_CODE_LENGTH);
+        return new LzHuffmanCode(windowBits, litLenCode, distanceCode);
+    }
+
+    /**
+     * finds the number of bits it takes to code the symbols counted, with their extra bits
+     * pre: the counts are the counts the codes were made from
+     * post: none
+     * @param litLenCounts, the counts of the literal/length alphabet
+     * @param distanceCounts, the counts of the distance alphabet
+     * @return the number of bits of the coded data, not counting the header
+     */
+    public long dataBits(long[] litLenCounts, long[] distanceCounts) {
+        long bits = 0;
+        for(int symbol = 0; symbol < LIT_LEN_SIZE; symbol++) {
+            int extraBits = symbol < FIRST_LENGTH_SYMBOL ? 0
+                : LENGTH_EXTRA_BITS[symbol - FIRST_LENGTH_SYMBOL];
+            bits += litLenCounts[symbol] * (litLenLengths[symbol] + extraBits);
+        }
+        for(int symbol = 0; symbol < distanceCounts.length; symbol++) {
+            bits += distanceCounts[symbol] * (distanceLengths[symbol] + distanceExtraBits(symbol));
+        }
+        return bits;
+    }
+
+    /**
+     * gets the number of bits write will write
+     * pre: none
+     * post: none
+     * @return the number of bits in the header for these codes
+     */
+    public long headerBits() {
+        return BITS_PER_WINDOW_BITS + litLenCode.headerBits() + distanceCode.headerBits();
+    }
+
+    /**
+     * writes the header for these codes so read can make the same codes
+     * pre: out != null
+     * post: the header has been written to out
+     * @param out, a BitOutputStream
+     */
+    public void write(BitOutputStream out) {
+        out.writeBits(BITS_PER_WINDOW_BITS, windowBits);
+        litLenCode.write(out);
+        distanceCode.write(out);
+    }
+
+    /**
+     * reads a header written by write and makes the codes
+     * pre: in != null
+     * post: the header has been read from in
+     * @param in, a BlockBitInputStream positioned at the start of the header
+     * @return the codes in the header
+     * @throws IOException if the header is not valid or in can't be read
+     */
+    public static LzHuffmanCode read(BlockBitInputStream in) throws IOException {
+        int windowBits = in.readBits(BITS_PER_WINDOW_BITS);
+        if(windowBits < MIN_WINDOW_BITS || windowBits > MAX_WINDOW_BITS) {
+            throw new IOException("Something is wrong with the window size in the header.");
+        }
+        CanonicalHuffmanCode litLenCode = CanonicalHuffmanCode.read(in, LIT_LEN_SIZE);
+        CanonicalHuffmanCode distanceCode = CanonicalHuffmanCode.read(in,
+                numDistanceSymbols(windowBits));
+        return new LzHuffmanCode(windowBits, litLenCode, distanceCode);
+    }
+
+    /**
+     * finds the matches in in and writes the codes of the literals and matches, then the code
+     * of PSEUDO_EOF
+     * pre: in != null, out != null, the codes were made from the counts of in with the same
+     * level and window bits
+     * post: all of in has been read
+     * @param in, the stream to code
+     * @param level, how hard to look for matches, the level in was counted with
+     * @param out, the stream the codes are written to
+     * @return the number of bytes read
+     * @throws IOException if in can't be read or has a symbol with no code
+     */
+    public long encode(InputStream in, int level, BitOutputStream out) throws IOException {
+        MatchFinder finder = new MatchFinder(level, windowBits) {
+            void literal(int value) throws IOException {
+                writeLitLen(out, value);
+            }
+
+            void match(int length, int distance) throws IOException {
+                int lengthSymbol = LENGTH_SYMBOL[length];
+                writeLitLen(out, FIRST_LENGTH_SYMBOL + lengthSymbol);
+                out.writeBits(LENGTH_EXTRA_BITS[lengthSymbol], length - LENGTH_BASE[lengthSymbol]);
+                int symbol = distanceSymbol(distance);
+                if(distanceLengths[symbol] == 0) {
+                    throw new IOException("The input is not the same as it was when counted.");
+                }
+                out.writeBits(distanceLengths[symbol], distanceCodes[symbol]);
+                int extraBits = distanceExtraBits(symbol);
+                out.writeBits(extraBits, (distance - 1) & ((1 << extraBits) - 1));
+            }
+        };
+        long numBytes = finder.findAll(in);
+        writeLitLen(out, PSEUDO_EOF);
+        return numBytes;
+    }
+
+    private void writeLitLen(BitOutputStream out, int symbol) throws IOException {
+        if(litLenLengths[symbol] == 0) {
+            throw new IOException("The input is not the same as it was when counted.");
+        }
+        out.writeBits(litLenLengths[symbol], litLenCodes[symbol]);
+    }
+
+    /**
+     * decodes literals and matches until PSEUDO_EOF and writes the bytes to out. Only the
+     * window before the byte being written and a chunk being filled are kept.
+     * pre: in != null, out != null
+     * post: the codes have been read from in and out has been flushed
+     * @param in, a BlockBitInputStream positioned at the start of the codes
+     * @param out, the stream the bytes are written to
+     * @return the number of bytes written
+     * @throws IOException if a code or distance is not valid, in ends early or a stream can't
+     * be used
+     */
+    public long decode(BlockBitInputStream in, OutputStream out) throws IOException {
+        HuffmanDecodeTable litLenTable = new HuffmanDecodeTable(litLenCodes, litLenLengths);
+        HuffmanDecodeTable distanceTable = new HuffmanDecodeTable(distanceCodes, distanceLengths);
+        int windowSize = 1 << windowBits;
+        byte[] window = new byte[windowSize + Math.max(windowSize, CHUNK_SIZE)];
+        int size = 0;
+        int written = 0;
+        long numBytes = 0;
+        int symbol = litLenTable.decodeValue(in);
+        while(symbol != PSEUDO_EOF) {
+            if(symbol == -1) {
+                throw new IOException("The compressed file ended before all the data.");
+            }
+            if(size + MAX_MATCH > window.length) {
+
+                //write what is done and keep one window of it to copy matches from
+                out.write(window, written, size - written);
+                System.arraycopy(window, size - windowSize, window, 0, windowSize);
+                size = windowSize;
+                written = size;
+            }
+            if(symbol < ALPH_SIZE) {
+                window[size++] = (byte) symbol;
+                numBytes++;
+            }
+            else {
+                int lengthSymbol = symbol - FIRST_LENGTH_SYMBOL;
+                int length = LENGTH_BASE[lengthSymbol]
+                    + readChecked(in, LENGTH_EXTRA_BITS[lengthSymbol]);
+                int distanceSymbol = distanceTable.decodeValue(in);
+                if(distanceSymbol == -1) {
+                    throw new IOException("The compressed file ended before all the data.");
+                }
+                int distance = distanceBase(distanceSymbol)
+                    + readChecked(in, distanceExtraBits(distanceSymbol));
+                if(length > MAX_MATCH || distance > size) {
+                    throw new IOException("Something is wrong with a match in the compressed "
+                            + "data.");
+                }
+                for(int x = 0; x < length; x++) {
+                    window[size] = window[size - distance];
+                    size++;
+                }
+                numBytes += length;
+            }
+            symbol = litLenTable.decodeValue(in);
+        }
+        out.write(window, written, size - written);
+        out.flush();
+        return numBytes;
+    }
+
+    private static int readChecked(BlockBitInputStream in, int howManyBits) throws IOException {
+        if(howManyBits == 0) {
+            return 0;
+        }
+        int bits = in.readBits(howManyBits);
+        if(bits == -1) {
+            throw new IOException("The compressed file ended before all the data.");
+        }
+        return bits;
+    }
+
+    /**
+     * gets the distance symbol of a distance. Distances 1 to 4 have a symbol each, then each
+     * power of 2 is split between two symbols with the bits below the top two as extra bits.
+     * @param distance, a distance from 1 to the window size
+     * @return the distance symbol
+     */
+    private static int distanceSymbol(int distance) {
+        int value = distance - 1;
+        if(value < 4) {
+            return value;
+        }
+        int topBit = BITS_PER_INT - 1 - Integer.numberOfLeadingZeros(value);
+        return 2 * topBit + ((value >>> (topBit - 1)) & 1);
+    }
+
+    private static int distanceExtraBits(int symbol) {
+        return symbol < 4 ? 0 : symbol / 2 - 1;
+    }
+
+    private static int distanceBase(int symbol) {
+        if(symbol < 4) {
+            return symbol + 1;
+        }
+        return ((2 | (symbol & 1)) << distanceExtraBits(symbol)) + 1;
+    }
+
+    /**
+     * finds the literals and matches of a stream with hash chains, a chunk at a time. The buffer
+     * holds a window and at least as much again to look ahead in; when the bytes ahead of the
+     * current position run low, the whole windows before the current window are dropped and the
+     * positions in the chains are moved back with them. The hash table grows with the window so the chains
+     * of big windows don't fill up with strings that only share a hash.
+     */
+    private abstract static class MatchFinder {
+
+        private int windowSize;
+        private int windowMask;
+        private int maxChain;
+        private int niceLength;
+        private int maxLazy;
+        private int goodLength;
+        private byte[] buffer;
+        private int hashBits;
+        private int[] head;
+        private int[] previous;
+        private int end;
+        private boolean atEnd;
+        private int matchStart;
+
+        MatchFinder(int level, int windowBits) {
+            checkSettings(level, windowBits);
+            windowSize = 1 << windowBits;
+            windowMask = windowSize - 1;
+            maxChain = MAX_CHAIN[level];
+            niceLength = NICE_LENGTH[level];
+            maxLazy = MAX_LAZY[level];
+            goodLength = GOOD_LENGTH[level];
+            hashBits = Math.max(MIN_HASH_BITS, Math.min(windowBits + 1, MAX_HASH_BITS));
+            buffer = new byte[windowSize + Math.max(windowSize, MIN_LOOKAHEAD_BUFFER)
+                    + MIN_LOOKAHEAD];
+            head = new int[1 << hashBits];
+            previous = new int[windowSize];
+            Arrays.fill(head, NIL);
+        }
+
+        /**
+         * handles a byte that is not part of a match
+         * @param value, the byte
+         * @throws IOException if the byte can't be handled
+         */
+        abstract void literal(int value) throws IOException;
+
+        /**
+         * handles a match
+         * @param length, the number of bytes matched, MIN_MATCH to MAX_MATCH
+         * @param distance, how far back the match starts, 1 to the window size
+         * @throws IOException if the match can't be handled
+         */
+        abstract void match(int length, int distance) throws IOException;
+
+        long findAll(InputStream in) throws IOException {
+            long numBytes = 0;
+            int pos = 0;
+            int previousLength = MIN_MATCH - 1;
+            int previousDistance = 0;
+            boolean literalWaiting = false;
+            while(true) {
+                if(!atEnd && end - pos < MIN_LOOKAHEAD) {
+                    int dropped = fill(in, pos);
+                    pos -= dropped;
+                    numBytes += dropped;
+                }
+                if(pos >= end) {
+                    break;
+                }
+                int candidate = insert(pos);
+                int length = MIN_MATCH - 1;
+                int distance = 0;
+                if(candidate != NIL && (maxLazy == 0 || previousLength < maxLazy)) {
+                    int found = longestMatch(pos, candidate, previousLength);
+                    if(found >= MIN_MATCH) {
+                        length = found;
+                        distance = pos - matchStart;
+                    }
+                }
+                if(maxLazy == 0) {
+
+                    //greedy: take a match as soon as it is found
+                    if(length >= MIN_MATCH) {
+                        match(length, distance);
+                        for(int x = pos + 1; x < pos + length; x++) {
+                            insert(x);
+                        }
+                        pos += length;
+                    }
+                    else {
+                        literal(buffer[pos++] & 0xff);
+                    }
+                }
+                else if(previousLength >= MIN_MATCH && length <= previousLength) {
+
+                    //the match before is at least as long, so take it
+                    match(previousLength, previousDistance);
+                    int matchEnd = pos - 1 + previousLength;
+                    for(int x = pos + 1; x < matchEnd; x++) {
+                        insert(x);
+                    }
+                    pos = matchEnd;
+                    literalWaiting = false;
+                    previousLength = MIN_MATCH - 1;
+                }
+                else {
+                    if(literalWaiting) {
+                        literal(buffer[pos - 1] & 0xff);
+                    }
+                    literalWaiting = true;
+                    previousLength = length;
+                    previousDistance = distance;
+                    pos++;
+                }
+            }
+            if(literalWaiting) {
+                literal(buffer[pos - 1] & 0xff);
+            }
+            return numBytes + end;
+        }
+
+        /**
+         * follows the chain from candidate back through the window for the longest match at
+         * pos that is longer than previousLength
+         * @return the length of the longest match, whose start is put in matchStart, or 0 if
+         * there is none longer than previousLength
+         */
+        private int longestMatch(int pos, int candidate, int previousLength) {
+            int maxLength = Math.min(MAX_MATCH, end - pos);
+            int bestLength = previousLength;
+            int chain = previousLength >= goodLength ? maxChain >> 2 : maxChain;
+            int limit = Math.max(pos - windowSize, NIL);
+            while(candidate > limit && chain-- > 0) {
+                if(bestLength < maxLength
+                        && buffer[candidate + bestLength] == buffer[pos + bestLength]
+                        && buffer[candidate] == buffer[pos]) {
+                    int length = 0;
+                    while(length < maxLength
+                            && buffer[candidate + length] == buffer[pos + length]) {
+                        length++;
+                    }
+                    if(length > bestLength) {
+                        bestLength = length;
+                        matchStart = candidate;
+                        if(length >= niceLength || length == maxLength) {
+                            break;
+                        }
+                    }
+                }
+                int next = previous[candidate & windowMask];
+                if(next >= candidate) {
+                    break;
+                }
+                candidate = next;
+            }
+            return bestLength > previousLength ? bestLength : 0;
+        }
+
+        /**
+         * puts pos at the head of the chain for the 3 bytes starting there
+         * @return the position that was at the head of the chain, or NIL
+         */
+        private int insert(int pos) {
+            if(pos + MIN_MATCH > end) {
+                return NIL;
+            }
+            int key = ((buffer[pos] & 0xff) << 16) | ((buffer[pos + 1] & 0xff) << 8)
+                | (buffer[pos + 2] & 0xff);
+            int hash = (key * 0x9E3779B1) >>> (BITS_PER_INT - hashBits);
+            int candidate = head[hash];
+            previous[pos & windowMask] = candidate;
+            head[hash] = pos;
+            return candidate;
+        }
+
+        /**
+         * reads more of in, first dropping the older window if the buffer is full
+         * @return the number of bytes dropped from the front of the buffer
+         */
+        private int fill(InputStream in, int pos) throws IOException {
+            int dropped = 0;
+            if(end == buffer.length) {
+                //drop whole windows so each position keeps its slot in previous, the extra
+                //MIN_LOOKAHEAD in the buffer makes this at least one window
+                dropped = (pos - windowSize) & ~windowMask;
+                System.arraycopy(buffer, dropped, buffer, 0, end - dropped);
+                end -= dropped;
+                for(int x = 0; x < head.length; x++) {
+                    head[x] = head[x] >= dropped ? head[x] - dropped : NIL;
+                }
+                for(int x = 0; x < previous.length; x++) {
+                    previous[x] = previous[x] >= dropped ? previous[x] - dropped : NIL;
+                }
+            }
+            while(end < buffer.length && !atEnd) {
+                int numRead = in.read(buffer, end, Math.min(CHUNK_SIZE, buffer.length - end));
+                if(numRead == -1) {
+                    atEnd = true;
+                }
+                else {
+                    end += numRead;
+                }
+                if(end - (pos - dropped) >= MIN_LOOKAHEAD) {
+                    break;
+                }
+            }
+            return dropped;
+        }
+    }
+}
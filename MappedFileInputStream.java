@@ -0,0 +1,198 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An <code>InputStream</code> that reads a file through memory mapped windows instead of copying
+ * it into an array. A window of up to <code>windowSize</code> bytes is mapped at a time and the
+ * next one is mapped when it runs out, so files longer than <code>Integer.MAX_VALUE</code> bytes
+ * can be read.
+ * <P>
+ * Besides the usual <code>read</code> methods, clients that know about this class can take the
+ * rest of the current window as a <code>ByteBuffer</code> with <code>nextWindow</code> and read
+ * the mapped memory directly, or map any part of the file with <code>map</code>.
+ */
+public class MappedFileInputStream extends InputStream {
+
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+
+    private File mySource;
+    private RandomAccessFile myFile;
+    private FileChannel myChannel;
+    private long myLength;
+    private int myWindowSize;
+    private ByteBuffer myWindow;
+    private long myWindowStart;
+
+    /**
+     * Open a stream that reads the file in windows of a default size.
+     * @param file is the file to read
+     * @throws IOException if the file can't be opened
+     */
+    public MappedFileInputStream(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Open a stream that reads the file in windows of <code>windowSize</code> bytes.
+     * @param file is the file to read
+     * @param windowSize is the most bytes mapped at a time
+     * @throws IOException if the file can't be opened
+     * @throws IllegalArgumentException if windowSize is less than 1
+     */
+    public MappedFileInputStream(File file, int windowSize) throws IOException {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("window size must be positive: " + windowSize);
+        }
+        mySource = file;
+        myFile = new RandomAccessFile(file, "r");
+        myChannel = myFile.getChannel();
+        myLength = myChannel.size();
+        myWindowSize = windowSize;
+        myWindow = ByteBuffer.allocate(0);
+    }
+
+    /**
+     * Open another stream over the same file as <code>other</code>, in windows of the same
+     * size, that reads from where <code>other</code> reads next.
+     * @param other is the stream whose file is opened again
+     * @throws IOException if the file can't be opened
+     */
+    protected MappedFileInputStream(MappedFileInputStream other) throws IOException {
+        this(other.mySource, other.myWindowSize);
+        myWindowStart = other.position();
+    }
+
+    /**
+     * Open another stream over the same file that reads from where this one reads next, so
+     * the file can be read again after this stream has been read and closed.
+     * @return a new stream over the file
+     * @throws IOException if the file can't be opened
+     */
+    public MappedFileInputStream reopen() throws IOException {
+        return new MappedFileInputStream(this);
+    }
+
+    /*
+     * Map the next window if the current one is used up, return false at the end of the file.
+     */
+    private boolean ensureWindow() throws IOException {
+        if (myWindow.hasRemaining()) {
+            return true;
+        }
+        long next = myWindowStart + myWindow.capacity();
+        if (next >= myLength) {
+            return false;
+        }
+        myWindow = map(next, Math.min(myWindowSize, myLength - next));
+        myWindowStart = next;
+        return true;
+    }
+
+    /**
+     * Map part of the file, without changing what the stream reads next.
+     * @param position is the offset in the file of the first byte to map
+     * @param size is the number of bytes to map, at most <code>Integer.MAX_VALUE</code>
+     * @return a read only buffer of the bytes, from position 0 to its limit
+     * @throws IOException if the part can't be mapped
+     */
+    public ByteBuffer map(long position, long size) throws IOException {
+        return myChannel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    /**
+     * Returns the bytes of the current window that have not been read, mapping the next window
+     * first if the current one is used up. The bytes returned count as read.
+     * @return a buffer holding the bytes between its position and limit, or null at the end
+     * of the file
+     * @throws IOException if the next window can't be mapped
+     */
+    public ByteBuffer nextWindow() throws IOException {
+        if (!ensureWindow()) {
+            return null;
+        }
+        ByteBuffer rest = myWindow.slice();
+        myWindow.position(myWindow.limit());
+        return rest;
+    }
+
+    /**
+     * Returns the offset in the file of the next byte to read.
+     * @return the number of bytes read or skipped so far
+     */
+    public long position() {
+        return myWindowStart + myWindow.position();
+    }
+
+    /**
+     * Returns the number of bytes in the file.
+     * @return the length of the file
+     */
+    public long length() {
+        return myLength;
+    }
+
+    /**
+     * Read the next byte.
+     * @return the next byte, or -1 at the end of the file
+     * @throws IOException if the next window can't be mapped
+     */
+    public int read() throws IOException {
+        return ensureWindow() ? myWindow.get() & 0xff : -1;
+    }
+
+    /**
+     * Read up to <code>len</code> bytes, all from the same window.
+     * @param b is the array to read into
+     * @param off is the index of b to put the first byte
+     * @param len is the most bytes to read
+     * @return the number of bytes read, or -1 at the end of the file
+     * @throws IOException if the next window can't be mapped
+     */
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureWindow()) {
+            return -1;
+        }
+        int numRead = Math.min(len, myWindow.remaining());
+        myWindow.get(b, off, numRead);
+        return numRead;
+    }
+
+    /**
+     * Skip up to <code>n</code> bytes, all in the same window.
+     * @param n is the most bytes to skip
+     * @return the number of bytes skipped
+     * @throws IOException if the next window can't be mapped
+     */
+    public long skip(long n) throws IOException {
+        if (n <= 0 || !ensureWindow()) {
+            return 0;
+        }
+        int numSkipped = (int) Math.min(n, myWindow.remaining());
+        myWindow.position(myWindow.position() + numSkipped);
+        return numSkipped;
+    }
+
+    /**
+     * Returns the number of bytes left in the file, at most <code>Integer.MAX_VALUE</code>.
+     * @return the number of bytes that can be read
+     */
+    public int available() {
+        long left = myLength - position();
+        return (int) Math.min(left, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Close the file. Windows already mapped stay valid until they are garbage collected.
+     * @throws IOException if the file can't be closed
+     */
+    public void close() throws IOException {
+        myFile.close();
+    }
+}
@@ -11,11 +11,19 @@
  *  Grader name: Aditya
  */
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 public class PriorityQueue<E extends Comparable<? super E>> { 
     
-    private ArrayList<E> list;
+    private static final int DEFAULT_CAPACITY = 16;
+    
+    //binary heap, the children of heap[i] are at heap[2i + 1] and heap[2i + 2]
+    private Object[] heap;
+    
+    //order[i] is when heap[i] was added, so equal elements come out first in first out
+    private long[] order;
+    private int size;
+    private long numAdded;
     
     /**
      * default constructor
@@ -23,7 +31,8 @@ public class PriorityQueue<E extends Comparable<? super E>> {
      * post: none
      */
     public PriorityQueue() {
-        list = new ArrayList<E>();
+        heap = new Object[DEFAULT_CAPACITY];
+        order = new long[DEFAULT_CAPACITY];
     }
     
     /**
@@ -42,30 +51,23 @@ public class PriorityQueue<E extends Comparable<? super E>> {
                     + "cannot be null.");
         }
         
-        //if queue is empty, just add; if last element in queue equals e, add to end
-        if(list.size() == 0 || list.get(size() - 1).compareTo(e) <= 0) { 
-            list.add(e);
-            return true;
+        if(size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+            order = Arrays.copyOf(order, size * 2);
         }
         
-        //otherwise, there must be an elem greater than e, so find position to insert to list
-        int pos = 0;
-        boolean found = false;
-        while(!found && pos < size()) {
-            if(e.compareTo(list.get(pos)) < 0) {
-                found = true;
-            }
-            else {
-                pos++;
-            }
-        }
-        if(found) {
-            list.add(pos, e);
-            return true;
+        //start at the end of the heap and move up past every parent that comes after e
+        int pos = size;
+        size++;
+        long added = numAdded++;
+        while(pos > 0 && comesBefore(e, added, (pos - 1) / 2)) {
+            heap[pos] = heap[(pos - 1) / 2];
+            order[pos] = order[(pos - 1) / 2];
+            pos = (pos - 1) / 2;
         }
-        
-        //couldn't find a position to add in e, failed to add to queue
-        return false;
+        heap[pos] = e;
+        order[pos] = added;
+        return true;
     }
     
     /**
@@ -76,11 +78,71 @@ public class PriorityQueue<E extends Comparable<? super E>> {
      * @return E, an element that is at the front of the queue
      */
     public E poll() {
-        if(list.size() == 0) {
+        if(size == 0) {
             return null;
         }
         
-        return list.remove(0);
+        E result = elementAt(0);
+        size--;
+        E last = elementAt(size);
+        long lastAdded = order[size];
+        heap[size] = null;
+        
+        //put the last element at the top and move it down past every child that comes before it
+        int pos = 0;
+        boolean placed = size == 0;
+        while(!placed) {
+            int child = 2 * pos + 1;
+            if(child + 1 < size && comesBefore(elementAt(child + 1), order[child + 1], child)) {
+                child++; //right child comes before left child
+            }
+            if(child < size && comesBefore(elementAt(child), order[child], last, lastAdded)) {
+                heap[pos] = heap[child];
+                order[pos] = order[child];
+                pos = child;
+            }
+            else {
+                heap[pos] = last;
+                order[pos] = lastAdded;
+                placed = true;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * checks if element e, added at time added, comes out of the queue before the element at
+     * index pos of the heap
+     * @param e, an element
+     * @param added, when e was added
+     * @param pos, an index of the heap
+     * @return true if e comes before the element at pos
+     */
+    private boolean comesBefore(E e, long added, int pos) {
+        return comesBefore(e, added, elementAt(pos), order[pos]);
+    }
+    
+    /**
+     * checks if element e, added at time added, comes out of the queue before element other
+     * @param e, an element
+     * @param added, when e was added
+     * @param other, another element
+     * @param otherAdded, when other was added
+     * @return true if e is smaller than other, or equal to other and added before it
+     */
+    private boolean comesBefore(E e, long added, E other, long otherAdded) {
+        int compare = e.compareTo(other);
+        return compare < 0 || (compare == 0 && added < otherAdded);
+    }
+    
+    /**
+     * gets the element at index pos of the heap
+     * @param pos, an index of the heap
+     * @return the element at pos
+     */
+    @SuppressWarnings("unchecked")
+    private E elementAt(int pos) {
+        return (E) heap[pos];
     }
     
     /**
@@ -90,7 +152,7 @@ public class PriorityQueue<E extends Comparable<? super E>> {
      * @return the size
      */
     public int size() {
-        return list.size();
+        return size;
     }
     
     /**
@@ -100,10 +162,10 @@ public class PriorityQueue<E extends Comparable<? super E>> {
      * @return
      */
     public E peek() {
-        if(list.size() == 0) {
+        if(size == 0) {
             return null;
         }
         
-        return list.get(0);
+        return elementAt(0);
     }
 }
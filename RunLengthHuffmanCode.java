@@ -0,0 +1,294 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A run-length stage in front of a canonical Huffman code, for the STORE_RLE format. Huffman
+ * codes spend at least one bit on every byte, so a long run of one byte, like the zero padding
+ * of binary records, can't code in less than 1/8 of its size. Here a run is coded as its byte
+ * followed by run symbols that each repeat the byte before them, so a run of any length codes
+ * in a few bits.
+ * <P>
+ * The alphabet is the ALPH_SIZE byte values, PSEUDO_EOF, then NUM_RUN_SYMBOLS run symbols. Run
+ * symbol k, counting from 1, is followed by k extra bits and repeats the byte 2^k plus the
+ * extra bits times, so it covers 2^k to 2^(k+1) - 1 repeats. A single repeat is coded as
+ * another copy of the byte and longer runs than MAX_REPEATS use more than one run symbol. The
+ * code is a canonical code over the whole alphabet, stored with CanonicalHuffmanCode.write.
+ * <P>
+ * The runs are found as the input is read, a chunk at a time, and undone as the output is
+ * written, so neither side holds more than a chunk of the data.
+ */
+public class RunLengthHuffmanCode implements IHuffConstants {
+
+    public static final int NUM_RUN_SYMBOLS = 30;
+    public static final int RUN_ALPH_SIZE = ALPH_SIZE + 1 + NUM_RUN_SYMBOLS;
+
+    private static final int FIRST_RUN_SYMBOL = PSEUDO_EOF + 1;
+    private static final int MIN_REPEATS = 2;
+    private static final int MAX_REPEATS = Integer.MAX_VALUE; //the most the last symbol covers
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private CanonicalHuffmanCode code;
+    private int[] codes;
+    private byte[] codeLengths;
+
+    /**
+     * makes the model for a code over the run-length alphabet
+     * @param code, a code with RUN_ALPH_SIZE values
+     */
+    private RunLengthHuffmanCode(CanonicalHuffmanCode code) {
+        this.code = code;
+        codes = code.getCodes();
+        codeLengths = code.getCodeLengths();
+    }
+
+    /**
+     * reads all of in and adds the number of times each symbol of the run-length alphabet
+     * occurs to counts. PSEUDO_EOF is counted once.
+     * pre: in != null, counts.length == RUN_ALPH_SIZE
+     * post: all of in has been read
+     * @param in, the stream to count
+     * @param counts, the counts to add to
+     * @return the number of bytes read
+     * @throws IOException if in can't be read
+     */
+    public static long count(InputStream in, long[] counts) throws IOException {
+        RunReader reader = new RunReader() {
+            void symbol(int symbol, int extraBits, int extra) {
+                counts[symbol]++;
+            }
+        };
+        long numBytes = reader.readAll(in);
+        counts[PSEUDO_EOF]++;
+        return numBytes;
+    }
+
+    /**
+     * makes the code for symbol counts
+     * pre: counts.length == RUN_ALPH_SIZE, no count is negative,
+     * 2^maxCodeLength >= RUN_ALPH_SIZE, maxCodeLength <= CanonicalHuffmanCode.MAX_CODE_LENGTH
+     * post: none
+     * @param counts, the number of times each symbol occurs
+     * @param maxCodeLength, the longest code length allowed
+     * @return the code for counts
+     */
+    public static RunLengthHuffmanCode fromCounts(long[] counts, int maxCodeLength) {
+        return new RunLengthHuffmanCode(
+                CanonicalHuffmanCode.fromFrequencies(counts, maxCodeLength));
+    }
+
+    /**
+     * finds the number of bits it takes to code the symbols counted, with the extra bits of
+     * the run symbols
+     * pre: counts are the counts the code was made from
+     * post: none
+     * @param counts, the number of times each symbol occurs
+     * @return the number of bits of the coded data, not counting the header
+     */
+    public long dataBits(long[] counts) {
+        long bits = 0;
+        for(int symbol = 0; symbol < RUN_ALPH_SIZE; symbol++) {
+            bits += counts[symbol] * (codeLengths[symbol] + extraBits(symbol));
+        }
+        return bits;
+    }
+
+    /**
+     * gets the number of bits write will write
+     * pre: none
+     * post: none
+     * @return the number of bits in the header for this code
+     */
+    public long headerBits() {
+        return code.headerBits();
+    }
+
+    /**
+     * writes the header for this code so read can make the same code
+     * pre: out != null
+     * post: the header has been written to out
+     * @param out, a BitOutputStream
+     */
+    public void write(BitOutputStream out) {
+        code.write(out);
+    }
+
+    /**
+     * reads a header written by write and makes the code
+     * pre: in != null
+     * post: the header has been read from in
+     * @param in, a BlockBitInputStream positioned at the start of the header
+     * @return the code in the header
+     * @throws IOException if the header is not valid or in can't be read
+     */
+    public static RunLengthHuffmanCode read(BlockBitInputStream in) throws IOException {
+        return new RunLengthHuffmanCode(CanonicalHuffmanCode.read(in, RUN_ALPH_SIZE));
+    }
+
+    /**
+     * writes the code of every symbol of in, then the code of PSEUDO_EOF
+     * pre: in != null, out != null, the code was made from the counts of in
+     * post: all of in has been read
+     * @param in, the stream to code
+     * @param out, the stream the codes are written to
+     * @return the number of bytes read
+     * @throws IOException if in can't be read or has a symbol with no code
+     */
+    public long encode(InputStream in, BitOutputStream out) throws IOException {
+        RunReader reader = new RunReader() {
+            void symbol(int symbol, int extraBits, int extra) throws IOException {
+                writeCode(out, symbol);
+                out.writeBits(extraBits, extra);
+            }
+        };
+        long numBytes = reader.readAll(in);
+        writeCode(out, PSEUDO_EOF);
+        return numBytes;
+    }
+
+    private void writeCode(BitOutputStream out, int symbol) throws IOException {
+        if(codeLengths[symbol] == 0) {
+            throw new IOException("The input is not the same as it was when counted.");
+        }
+        out.writeBits(codeLengths[symbol], codes[symbol]);
+    }
+
+    /**
+     * decodes symbols until PSEUDO_EOF, repeats the runs and writes the bytes to out
+     * pre: in != null, out != null
+     * post: the codes have been read from in and out has been flushed
+     * @param in, a BlockBitInputStream positioned at the start of the codes
+     * @param out, the stream the bytes are written to
+     * @return the number of bytes written
+     * @throws IOException if a code is not valid, in ends early or a stream can't be used
+     */
+    public long decode(BlockBitInputStream in, OutputStream out) throws IOException {
+        HuffmanDecodeTable table = new HuffmanDecodeTable(codes, codeLengths);
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int size = 0;
+        int previous = -1;
+        long numBytes = 0;
+        int symbol = table.decodeValue(in);
+        while(symbol != PSEUDO_EOF) {
+            if(symbol == -1) {
+                throw new IOException("The compressed file ended before all the data.");
+            }
+            long repeats = 1;
+            if(symbol >= FIRST_RUN_SYMBOL) {
+                int extraBits = extraBits(symbol);
+                int extra = in.readBits(extraBits);
+                if(previous == -1 || extra == -1) {
+                    throw new IOException("Something is wrong with the compressed data.");
+                }
+                repeats = (1L << extraBits) + extra;
+            }
+            else {
+                previous = symbol;
+            }
+            numBytes += repeats;
+            while(repeats > 0) {
+                if(size == CHUNK_SIZE) {
+                    out.write(chunk, 0, size);
+                    size = 0;
+                }
+                int fill = (int) Math.min(repeats, CHUNK_SIZE - size);
+                Arrays.fill(chunk, size, size + fill, (byte) previous);
+                size += fill;
+                repeats -= fill;
+            }
+            symbol = table.decodeValue(in);
+        }
+        out.write(chunk, 0, size);
+        out.flush();
+        return numBytes;
+    }
+
+    /**
+     * gets the number of extra bits after a symbol
+     * @param symbol, a symbol of the run-length alphabet
+     * @return the number of extra bits, 0 for a byte or PSEUDO_EOF
+     */
+    private static int extraBits(int symbol) {
+        return symbol < FIRST_RUN_SYMBOL ? 0 : symbol - FIRST_RUN_SYMBOL + 1;
+    }
+
+    /**
+     * splits the bytes of a stream into bytes and runs, a chunk at a time. A
+     * MappedFileInputStream is read a mapped window at a time without copying. A run that
+     * crosses the end of a chunk is carried into the next one.
+     */
+    private abstract static class RunReader {
+
+        private int previous = -1;
+        private int repeats;
+
+        /**
+         * handles the next symbol
+         * @param symbol, a byte or run symbol
+         * @param extraBits, the number of extra bits after the symbol
+         * @param extra, the extra bits
+         * @throws IOException if the symbol can't be handled
+         */
+        abstract void symbol(int symbol, int extraBits, int extra) throws IOException;
+
+        long readAll(InputStream in) throws IOException {
+            long numBytes = 0;
+            if(in instanceof MappedFileInputStream) {
+                MappedFileInputStream mapped = (MappedFileInputStream) in;
+                ByteBuffer window = mapped.nextWindow();
+                while(window != null) {
+                    read(window);
+                    numBytes += window.remaining();
+                    window = mapped.nextWindow();
+                }
+            }
+            else {
+                byte[] chunk = new byte[CHUNK_SIZE];
+                int numRead = in.read(chunk);
+                while(numRead != -1) {
+                    read(ByteBuffer.wrap(chunk, 0, numRead));
+                    numBytes += numRead;
+                    numRead = in.read(chunk);
+                }
+            }
+            endRun();
+            return numBytes;
+        }
+
+        private void read(ByteBuffer bytes) throws IOException {
+            int end = bytes.limit();
+            for(int x = bytes.position(); x < end; x++) {
+                int value = bytes.get(x) & 0xff;
+                if(value == previous) {
+                    repeats++;
+                    if(repeats == MAX_REPEATS) {
+                        endRun();
+                    }
+                }
+                else {
+                    endRun();
+                    symbol(value, 0, 0);
+                    previous = value;
+                }
+            }
+        }
+
+        /**
+         * writes the repeats of the current run, as a copy of the byte if there is only one
+         * @throws IOException if the symbol can't be handled
+         */
+        private void endRun() throws IOException {
+            if(repeats >= MIN_REPEATS) {
+                int extraBits = BITS_PER_INT - 1 - Integer.numberOfLeadingZeros(repeats);
+                symbol(FIRST_RUN_SYMBOL + extraBits - 1, extraBits,
+                        repeats - (1 << extraBits));
+            }
+            else if(repeats == 1) {
+                symbol(previous, 0, 0);
+            }
+            repeats = 0;
+        }
+    }
+}
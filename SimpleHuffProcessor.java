@@ -11,21 +11,71 @@
  *  Grader name: Aditya
  */
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
 
 public class SimpleHuffProcessor implements IHuffProcessor {
 
+    private static final int VAR_COUNT_BITS = 7;
+    private static final int VAR_COUNT_MASK = (1 << VAR_COUNT_BITS) - 1;
+    private static final int VAR_COUNT_MORE = 1 << VAR_COUNT_BITS;
+    private static final int LENGTH_PIECE_BITS = 16;
+
+    //every header format a file can start with, after the magic number
+    private static final int[] FORMATS = {STORE_COUNTS, STORE_TREE, STORE_CUSTOM, STORE_BLOCKS,
+        STORE_ADAPTIVE, STORE_COUNTS_VAR, STORE_RAW, STORE_CONTEXT, STORE_WIDE, STORE_RLE,
+        STORE_BWT, STORE_LZ};
+
+    static {
+        checkFormats();
+    }
+
     private IHuffViewer myViewer;
     private HuffmanCodeTree tree;
+    private int[] codes;
+    private byte[] codeLengths;
+    private HuffmanModel model;
+    private ContextHuffmanCode contextCode;
+    private WideSymbolCode wideCode;
+    private RunLengthHuffmanCode runLengthCode;
+    private LzHuffmanCode lzCode;
+    private int level;
+    private int windowBits;
+    private int symbolWidth;
+    private int maxCodeLength;
+    private int blockSize;
     private int header;
-    private int[] freqs;
+    private long[] freqs;
     private boolean preProcessed;
-    private int origBits;
-    private int compressedBits;
+    private boolean stored;
+    private long origBits;
+    private long compressedBits;
+    private long uncompressedBits;
+
+    /**
+     * checks that every header format is different from the others and from MAGIC_NUMBER, so
+     * the format read from a file picks only one way to uncompress it
+     * pre: none
+     * post: none
+     * @throws IllegalStateException if two formats are the same or one is MAGIC_NUMBER
+     */
+    private static void checkFormats() {
+        for(int x = 0; x < FORMATS.length; x++) {
+            if(FORMATS[x] == MAGIC_NUMBER) {
+                throw new IllegalStateException("Header format " + Integer.toHexString(FORMATS[x])
+                        + " is the same as the magic number.");
+            }
+            for(int y = x + 1; y < FORMATS.length; y++) {
+                if(FORMATS[x] == FORMATS[y]) {
+                    throw new IllegalStateException("Header format " 
+                            + Integer.toHexString(FORMATS[x]) + " is used more than once.");
+                }
+            }
+        }
+    }
 
     /**
      * default constructor
@@ -33,8 +83,86 @@ public class SimpleHuffProcessor implements IHuffProcessor {
      * post:none
      */
     public SimpleHuffProcessor() {
-        freqs = new int[ALPH_SIZE];
+        freqs = new long[ALPH_SIZE];
         preProcessed = false;
+        maxCodeLength = CanonicalHuffmanCode.MAX_CODE_LENGTH;
+        blockSize = BlockCodec.DEFAULT_BLOCK_SIZE;
+        symbolWidth = WideSymbolCode.MAX_WIDTH;
+        level = LzHuffmanCode.DEFAULT_LEVEL;
+        windowBits = LzHuffmanCode.DEFAULT_WINDOW_BITS;
+    }
+    
+    /**
+     * sets the longest code length allowed when compressing with the custom header format. 
+     * Shorter limits bound the size of decoding tables at a small cost in compression.
+     * pre: the limit is long enough for every value and PSEUDO_EOF to have a code, and no more
+     * than CanonicalHuffmanCode.MAX_CODE_LENGTH
+     * post: the limit is used by the next call to preprocessCompress
+     * @param maxLength, the longest code length allowed, in bits
+     */
+    public void setMaxCodeLength(int maxLength) {
+        
+        //number of bits needed to give ALPH_SIZE + 1 values different codes
+        int minLength = BITS_PER_INT - Integer.numberOfLeadingZeros(ALPH_SIZE);
+        if(maxLength < minLength || maxLength > CanonicalHuffmanCode.MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Violation of precondition: setMaxCodeLength. "
+                    + "Limit must be between " + minLength + " and " 
+                    + CanonicalHuffmanCode.MAX_CODE_LENGTH + ".");
+        }
+        maxCodeLength = maxLength;
+    }
+    
+    /**
+     * sets the number of bytes in each block when compressing with the block header format.
+     * Each block gets its own code, so smaller blocks adapt to changes in the data and spread
+     * over more cores, but spend more bits on headers.
+     * pre: BlockCodec.MIN_BLOCK_SIZE <= size <= BlockCodec.MAX_BLOCK_SIZE
+     * post: the size is used by the next call to preprocessCompress and compress
+     * @param size, the number of bytes in each block
+     */
+    public void setBlockSize(int size) {
+        if(size < BlockCodec.MIN_BLOCK_SIZE || size > BlockCodec.MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Violation of precondition: setBlockSize. "
+                    + "Size must be between " + BlockCodec.MIN_BLOCK_SIZE + " and " 
+                    + BlockCodec.MAX_BLOCK_SIZE + ".");
+        }
+        blockSize = size;
+    }
+    
+    /**
+     * sets the number of bits in each symbol when compressing with the wide header format.
+     * 16 bits suits UTF-16 text and dumps of 16 bit numbers.
+     * pre: WideSymbolCode.MIN_WIDTH <= width <= WideSymbolCode.MAX_WIDTH
+     * post: the width is used by the next call to preprocessCompress
+     * @param width, the number of bits in each symbol
+     */
+    public void setSymbolWidth(int width) {
+        WideSymbolCode.checkWidth(width);
+        symbolWidth = width;
+    }
+    
+    /**
+     * sets how hard to look for matches when compressing with the LZ header format. Level 1 is
+     * the fastest and level 9 gives the smallest files.
+     * pre: LzHuffmanCode.MIN_LEVEL <= level <= LzHuffmanCode.MAX_LEVEL
+     * post: the level is used by the next call to preprocessCompress and compress
+     * @param level, the level
+     */
+    public void setLevel(int level) {
+        LzHuffmanCode.checkSettings(level, windowBits);
+        this.level = level;
+    }
+    
+    /**
+     * sets the number of bytes back a match can start when compressing with the LZ header
+     * format, as a power of 2. Bigger windows find more matches but use more memory.
+     * pre: LzHuffmanCode.MIN_WINDOW_BITS <= bits <= LzHuffmanCode.MAX_WINDOW_BITS
+     * post: the window size is used by the next call to preprocessCompress
+     * @param bits, the number of bits in the window size
+     */
+    public void setWindowBits(int bits) {
+        LzHuffmanCode.checkSettings(level, bits);
+        windowBits = bits;
     }
     
     /**
@@ -62,35 +190,157 @@ public class SimpleHuffProcessor implements IHuffProcessor {
         if(viewer) {
             myViewer.showMessage("Starting preprocessCompress method");
         }
-        BitInputStream bitIn = new BitInputStream(new BufferedInputStream(in));
         preProcessed = true;
-        freqs = new int[ALPH_SIZE];
+        freqs = new long[ALPH_SIZE];
         header = headerFormat;
         origBits = 0;
         compressedBits = 0;
+        stored = false;
+        
+        if(headerFormat == STORE_RAW) {
+            origBits = copy(in, OutputStream.nullOutputStream()) * BITS_PER_WORD;
+            compressedBits = storedBits();
+            stored = true;
+            in.close();
+            if(viewer) {
+                myViewer.showMessage("Finished preprocessCompress method");
+            }
+            return clampToInt(origBits - compressedBits);
+        }
+        
+        //blocks are measured in parallel, each with its own code, so there are no counts to keep
+        if(headerFormat == STORE_BLOCKS || headerFormat == STORE_BWT) {
+            BlockCodec codec = new BlockCodec(blockSize, ForkJoinPool.commonPool(), 
+                    headerFormat == STORE_BWT);
+            compressedBits = codec.compressedBits(in);
+            origBits = codec.getBytesRead() * BITS_PER_WORD;
+            chooseStored();
+            in.close();
+            if(viewer) {
+                myViewer.showMessage("Finished preprocessCompress method");
+            }
+            return clampToInt(origBits - compressedBits);
+        }
+        
+        //each byte is counted in the context of the byte before it
+        if(headerFormat == STORE_CONTEXT) {
+            long[][] pairCounts = new long[ALPH_SIZE][ALPH_SIZE];
+            origBits = ContextHuffmanCode.countPairs(in, pairCounts) * BITS_PER_WORD;
+            contextCode = ContextHuffmanCode.fromCounts(pairCounts);
+            compressedBits = BITS_PER_INT + BITS_PER_INT + Long.SIZE + contextCode.headerBits()
+                    + contextCode.dataBits(pairCounts);
+            chooseStored();
+            in.close();
+            if(viewer) {
+                myViewer.showMessage("Finished preprocessCompress method");
+            }
+            return clampToInt(origBits - compressedBits);
+        }
         
-        int bits = bitIn.readBits(BITS_PER_WORD);
-        checkReadBits(bits); //checks if bits is a valid value
+        //symbols wider than a byte are counted in a table sized for the width
+        if(headerFormat == STORE_WIDE) {
+            long[] symbolCounts = new long[1 << symbolWidth];
+            long numBytes = WideSymbolCode.count(in, symbolWidth, symbolCounts);
+            origBits = numBytes * BITS_PER_WORD;
+            wideCode = WideSymbolCode.fromCounts(symbolWidth, symbolCounts);
+            compressedBits = BITS_PER_INT + BITS_PER_INT + Long.SIZE + wideCode.headerBits()
+                    + wideCode.dataBits(symbolCounts, numBytes);
+            chooseStored();
+            in.close();
+            if(viewer) {
+                myViewer.showMessage("Finished preprocessCompress method");
+            }
+            return clampToInt(origBits - compressedBits);
+        }
         
-        //if compressing a compressed file, stop at PEOF value, uncompressed file shouldn't have
-        //a PEOF if reading an uncompressed file
-        while(bits != -1 && bits != PSEUDO_EOF) {
-            freqs[bits]++;
-            origBits += BITS_PER_WORD; 
-            bits = bitIn.readBits(BITS_PER_WORD);
+        //runs are counted as run symbols as the input is read, without holding on to it
+        if(headerFormat == STORE_RLE) {
+            long[] symbolCounts = new long[RunLengthHuffmanCode.RUN_ALPH_SIZE];
+            origBits = RunLengthHuffmanCode.count(in, symbolCounts) * BITS_PER_WORD;
+            runLengthCode = RunLengthHuffmanCode.fromCounts(symbolCounts, maxCodeLength);
+            compressedBits = BITS_PER_INT + BITS_PER_INT + runLengthCode.headerBits()
+                    + runLengthCode.dataBits(symbolCounts);
+            chooseStored();
+            in.close();
+            if(viewer) {
+                myViewer.showMessage("Finished preprocessCompress method");
+            }
+            return clampToInt(origBits - compressedBits);
         }
         
-        //count characters & make queue
-        PriorityQueue<TreeNode> queue = makeQueue();
+        //matches are found as the input is read and their symbols counted
+        if(headerFormat == STORE_LZ) {
+            long[] litLenCounts = new long[LzHuffmanCode.numLitLenSymbols()];
+            long[] distanceCounts = new long[LzHuffmanCode.numDistanceSymbols(windowBits)];
+            origBits = LzHuffmanCode.count(in, level, windowBits, litLenCounts, distanceCounts) 
+                    * BITS_PER_WORD;
+            lzCode = LzHuffmanCode.fromCounts(windowBits, litLenCounts, distanceCounts);
+            compressedBits = BITS_PER_INT + BITS_PER_INT + lzCode.headerBits()
+                    + lzCode.dataBits(litLenCounts, distanceCounts);
+            chooseStored();
+            in.close();
+            if(viewer) {
+                myViewer.showMessage("Finished preprocessCompress method");
+            }
+            return clampToInt(origBits - compressedBits);
+        }
         
-        tree = new HuffmanCodeTree(queue); //make tree (map of paths made in HuffmanCodeTree class)
+        //adaptive codes depend on all the values before them, so they are measured by coding
+        //the input to a stream that throws the bits away
+        if(headerFormat == STORE_ADAPTIVE) {
+            AdaptiveHuffmanOutputStream adaptive = new AdaptiveHuffmanOutputStream(
+                    new BlockBitOutputStream(OutputStream.nullOutputStream()));
+            origBits = copy(in, adaptive) * BITS_PER_WORD;
+            adaptive.close();
+            compressedBits = BITS_PER_INT + BITS_PER_INT + adaptive.getBitsWritten();
+            chooseStored();
+            in.close();
+            if(viewer) {
+                myViewer.showMessage("Finished preprocessCompress method");
+            }
+            return clampToInt(origBits - compressedBits);
+        }
+        
+        //count whole chunks of bytes in parallel instead of 8 bits at a time, straight from the
+        //mapped file if in is a MappedFileInputStream
+        long numBytes = FrequencyCounter.count(in, freqs, ForkJoinPool.commonPool());
+        checkReadBits(numBytes == 0 ? -1 : 0); //an empty file is not valid input
+        origBits = numBytes * BITS_PER_WORD;
+        if(header == STORE_COUNTS && maxCount() > Integer.MAX_VALUE) {
+            throw new IOException("A value occurs too often for the count header, use the "
+                    + "variable length count header instead.");
+        }
+        
+        makeCodes(header);
         calcBitsCompressed();
-        bitIn.close();
+        chooseStored();
+        in.close();
         
         if(viewer) {
             myViewer.showMessage("Finished preprocessCompress method");
         }
-        return origBits - compressedBits;
+        return clampToInt(origBits - compressedBits);
+    }
+    
+    /**
+     * gets the number of bits of a STORE_RAW file of the input: the magic number, the header
+     * format, the 64 bit length and the input itself
+     * @return the number of bits of the stored file
+     */
+    private long storedBits() {
+        return BITS_PER_INT + BITS_PER_INT + Long.SIZE + origBits;
+    }
+    
+    /**
+     * switches to storing the input as it is, with STORE_RAW, if the estimate of the
+     * compressed size shows coding it would not save anything. The standard count and tree
+     * formats always write what they are asked to, so their output stays the same.
+     */
+    private void chooseStored() {
+        if(header != STORE_COUNTS && header != STORE_TREE && storedBits() <= compressedBits) {
+            compressedBits = storedBits();
+            stored = true;
+        }
     }
     
     /**
@@ -115,21 +365,58 @@ public class SimpleHuffProcessor implements IHuffProcessor {
         if(header == STORE_COUNTS) {
             compressedBits += BITS_PER_INT*ALPH_SIZE;
         }
+        else if(header == STORE_COUNTS_VAR) {
+            for(int x = 0; x < ALPH_SIZE; x++) {
+                compressedBits += varCountBytes(freqs[x]) * BITS_PER_WORD;
+            }
+        }
         else if(header == STORE_TREE) {
             
             //add another BITS_PER_INT for the size of tree representation int
             //add one to BITS_PER_WORD due to addition of PEOF value
             compressedBits += BITS_PER_INT + (tree.getNumLeaf()*(BITS_PER_WORD + 1) + tree.size());
         }
-        String[] map = tree.getPaths();
+        else if(header == STORE_CUSTOM) {
+            compressedBits += model.headerBits();
+        }
         for(int x = 0; x < ALPH_SIZE; x++) {
             
-            //frequency of each value times path length gives num bits for compressed data
-            if(freqs[x] != 0) {
-                compressedBits += freqs[x]*map[x].length();
-            }
+            //frequency of each value times code length gives num bits for compressed data
+            compressedBits += freqs[x]*codeLengths[x];
+        }
+        compressedBits += codeLengths[PSEUDO_EOF]; //add bit count for PEOF value
+    }
+    
+    /**
+     * makes the code for each value from the array of frequencies. The custom header format
+     * uses the canonical code of a HuffmanModel. Otherwise the codes come from a
+     * HuffmanCodeBuilder, which makes the same codes as a HuffmanCodeTree without making
+     * TreeNodes. The tree is only made if it is needed to write the header, or to write codes
+     * too long to fit in an int.
+     * @param headerFormat, the header format the codes are for
+     */
+    private void makeCodes(int headerFormat) {
+        if(headerFormat == STORE_CUSTOM) {
+            model = HuffmanModel.fromFrequencies(freqs, maxCodeLength);
+            tree = null;
+            codes = model.getCodes();
+            codeLengths = model.getCodeLengths();
+            return;
+        }
+        long[] weights = new long[ALPH_SIZE + 1];
+        System.arraycopy(freqs, 0, weights, 0, ALPH_SIZE);
+        weights[PSEUDO_EOF] = 1; //adding in PEOF value
+        HuffmanCodeBuilder builder = new HuffmanCodeBuilder(weights);
+        if(headerFormat == STORE_TREE || builder.getMaxCodeLength() > BITS_PER_INT) {
+            tree = new HuffmanCodeTree(makeQueue());
+            codes = tree.getCodes();
+            codeLengths = tree.getCodeLengths();
+        }
+        else {
+            tree = null;
+            codes = builder.getCodes();
+            codeLengths = builder.getCodeLengths();
         }
-        compressedBits += map[PSEUDO_EOF].length(); //add bit count for PEOF value
     }
 
     /**
@@ -163,30 +450,151 @@ public class SimpleHuffProcessor implements IHuffProcessor {
             return -1;
         }
         
-        BitOutputStream bitOut = new BitOutputStream(new BufferedOutputStream(out));
-        BitInputStream bitIn = new BitInputStream(new BufferedInputStream(in));
+        if(stored) {
+            writeStored(in, out);
+            if(viewer) {
+                myViewer.showMessage("Finished compressing");
+            }
+            return clampToInt(compressedBits);
+        }
+        
+        if(header == STORE_BLOCKS || header == STORE_BWT) {
+            BlockCodec codec = new BlockCodec(blockSize, ForkJoinPool.commonPool(), 
+                    header == STORE_BWT);
+            long written = codec.compress(in, out);
+            in.close();
+            out.close();
+            if(viewer) {
+                myViewer.showMessage("Finished compressing");
+            }
+            return clampToInt(written);
+        }
+        
+        BitOutputStream bitOut = new BlockBitOutputStream(out);
         
         bitOut.writeBits(BITS_PER_INT, MAGIC_NUMBER);
         writeHeader(bitOut); //writes header based on header format type
         
-        int bit = bitIn.readBits(BITS_PER_WORD);
-        checkReadBits(bit); //checks if bit is a valid value
+        if(header == STORE_CONTEXT || header == STORE_WIDE || header == STORE_RLE 
+                || header == STORE_LZ) {
+            long numBytes = header == STORE_CONTEXT ? contextCode.encode(in, bitOut)
+                : header == STORE_WIDE ? wideCode.encode(in, bitOut)
+                : header == STORE_RLE ? runLengthCode.encode(in, bitOut)
+                : lzCode.encode(in, level, bitOut);
+            bitOut.close();
+            in.close();
+            if(numBytes != origBits / BITS_PER_WORD) {
+                throw new IOException("The input is not the same length it was in "
+                        + "preprocessCompress.");
+            }
+            if(viewer) {
+                myViewer.showMessage("Finished compressing");
+            }
+            return clampToInt(compressedBits);
+        }
         
-        while(bit != -1 && bit != PSEUDO_EOF) { //if hits PEOF value, stop
-            for(int x = 0; x < tree.getPaths()[bit].length(); x++) {
-                
-                //char at x in the path would be either 0 or 1, so subtracting the value of '0'
-                //will give the integer value of 0 or 1
-                bitOut.writeBits(1, tree.getPaths()[bit].charAt(x) - '0');
+        if(header == STORE_ADAPTIVE) {
+            
+            //the adaptive stream writes the codes and PEOF, and closes bitOut
+            AdaptiveHuffmanOutputStream adaptive = new AdaptiveHuffmanOutputStream(bitOut);
+            copy(in, adaptive);
+            adaptive.close();
+            in.close();
+            if(viewer) {
+                myViewer.showMessage("Finished compressing");
             }
-            bit = bitIn.readBits(BITS_PER_WORD);
+            return clampToInt(compressedBits);
         }
-        tree.writePEOF(bitOut); //write the PEOF value based on tree's path for that value
-        closeStreams(bitIn, bitOut);
+        
+        long numBytes = writeCodes(in, bitOut);
+        checkReadBits(numBytes == 0 ? -1 : 0); //an empty file is not valid input
+        
+        //write the PEOF value based on its code
+        if(codeLengths[PSEUDO_EOF] <= BITS_PER_INT) {
+            bitOut.writeBits(codeLengths[PSEUDO_EOF], codes[PSEUDO_EOF]);
+        }
+        else {
+            tree.writePEOF(bitOut);
+        }
+        bitOut.close();
+        in.close();
         if(viewer) {
             myViewer.showMessage("Finished compressing");
         }
-        return compressedBits;
+        return clampToInt(compressedBits);
+    }
+    
+    /**
+     * writes a STORE_RAW file: the header, then every byte of in as it is
+     * @param in, the stream being compressed
+     * @param out, the stream the file is written to
+     * @throws IOException if the streams can't be used or in is not the length it had in
+     * preprocessCompress
+     */
+    private void writeStored(InputStream in, OutputStream out) throws IOException {
+        long numBytes = origBits / BITS_PER_WORD;
+        BitOutputStream bitOut = new BlockBitOutputStream(out);
+        bitOut.writeBits(BITS_PER_INT, MAGIC_NUMBER);
+        bitOut.writeBits(BITS_PER_INT, STORE_RAW);
+        writeLength(bitOut, numBytes);
+        bitOut.flush(); //the header is whole bytes, so the input can go straight to out
+        long numCopied = copy(in, out);
+        in.close();
+        out.close();
+        if(numCopied != numBytes) {
+            throw new IOException("The input is not the same length it was in "
+                    + "preprocessCompress.");
+        }
+    }
+    
+    /**
+     * writes the code of every byte of in. A MappedFileInputStream is read a mapped window at a
+     * time without copying, any other stream a chunk at a time.
+     * @param in, the stream being compressed
+     * @param bitOut, a BitOutputStream
+     * @return the number of bytes read from in
+     * @throws IOException
+     */
+    private long writeCodes(InputStream in, BitOutputStream bitOut) throws IOException {
+        long numBytes = 0;
+        if(in instanceof MappedFileInputStream) {
+            MappedFileInputStream mapped = (MappedFileInputStream) in;
+            ByteBuffer window = mapped.nextWindow();
+            while(window != null) {
+                numBytes += writeCodes(window, bitOut);
+                window = mapped.nextWindow();
+            }
+            return numBytes;
+        }
+        byte[] chunk = new byte[1 << 16];
+        int numRead = in.read(chunk);
+        while(numRead != -1) {
+            numBytes += writeCodes(ByteBuffer.wrap(chunk, 0, numRead), bitOut);
+            numRead = in.read(chunk);
+        }
+        return numBytes;
+    }
+    
+    /**
+     * writes the code of every byte between the position and limit of bytes
+     * @param bytes, the bytes being compressed
+     * @param bitOut, a BitOutputStream
+     * @return the number of bytes written
+     */
+    private int writeCodes(ByteBuffer bytes, BitOutputStream bitOut) {
+        int end = bytes.limit();
+        for(int x = bytes.position(); x < end; x++) {
+            int value = bytes.get(x) & 0xff;
+            
+            //write the whole code at once, only paths too long for an int go bit by bit
+            if(codeLengths[value] <= BITS_PER_INT) {
+                bitOut.writeBits(codeLengths[value], codes[value]);
+            }
+            else {
+                tree.writeCode(bitOut, value);
+            }
+        }
+        return end - bytes.position();
     }
     
     /**
@@ -197,7 +605,13 @@ public class SimpleHuffProcessor implements IHuffProcessor {
         if(header == STORE_COUNTS) {
             bitOut.writeBits(BITS_PER_INT, STORE_COUNTS); //write header format number
             for(int x = 0; x < ALPH_SIZE; x++) {
-                bitOut.writeBits(BITS_PER_INT, freqs[x]);
+                bitOut.writeBits(BITS_PER_INT, (int) freqs[x]);
+            }
+        }
+        else if(header == STORE_COUNTS_VAR) {
+            bitOut.writeBits(BITS_PER_INT, STORE_COUNTS_VAR); //write header format number
+            for(int x = 0; x < ALPH_SIZE; x++) {
+                writeVarCount(bitOut, freqs[x]);
             }
         }
         else if(header == STORE_TREE) {
@@ -208,6 +622,122 @@ public class SimpleHuffProcessor implements IHuffProcessor {
             bitOut.writeBits(BITS_PER_INT, sizeTreeRep);
             tree.writeTree(bitOut); //goes to tree to write the tree header format data
         }
+        else if(header == STORE_CUSTOM) {
+            bitOut.writeBits(BITS_PER_INT, STORE_CUSTOM); //write header format number
+            model.write(bitOut); //code lengths of the canonical code
+        }
+        else if(header == STORE_ADAPTIVE) {
+            bitOut.writeBits(BITS_PER_INT, STORE_ADAPTIVE); //no header, the codes adapt as they go
+        }
+        else if(header == STORE_CONTEXT) {
+            bitOut.writeBits(BITS_PER_INT, STORE_CONTEXT); //write header format number
+            writeLength(bitOut, origBits / BITS_PER_WORD); //there is no PEOF to end the codes
+            contextCode.write(bitOut); //which contexts have codes, and the codes
+        }
+        else if(header == STORE_WIDE) {
+            bitOut.writeBits(BITS_PER_INT, STORE_WIDE); //write header format number
+            writeLength(bitOut, origBits / BITS_PER_WORD); //there is no PEOF to end the codes
+            wideCode.write(bitOut); //symbol width, used symbols and their code lengths
+        }
+        else if(header == STORE_RLE) {
+            bitOut.writeBits(BITS_PER_INT, STORE_RLE); //write header format number
+            runLengthCode.write(bitOut); //code lengths of the bytes, PEOF and run symbols
+        }
+        else if(header == STORE_LZ) {
+            bitOut.writeBits(BITS_PER_INT, STORE_LZ); //write header format number
+            lzCode.write(bitOut); //window size, literal/length code and distance code
+        }
+    }
+    
+    /**
+     * gets the largest count of any value
+     * @return the most times any value occurs
+     */
+    private long maxCount() {
+        long max = 0;
+        for(int x = 0; x < ALPH_SIZE; x++) {
+            max = Math.max(max, freqs[x]);
+        }
+        return max;
+    }
+    
+    /**
+     * gets the number of bytes writeVarCount uses for a count
+     * @param count, a count of at least 0
+     * @return the number of bytes the count takes in the variable length count header
+     */
+    private static int varCountBytes(long count) {
+        int numBytes = 1;
+        while((count >>>= VAR_COUNT_BITS) != 0) {
+            numBytes++;
+        }
+        return numBytes;
+    }
+    
+    /**
+     * writes a count in the variable length count header. Each byte holds 7 bits of the count,
+     * lowest bits first, and its top bit is set if more bytes follow, so small counts take one
+     * byte and no count is too large.
+     * @param bitOut, a BitOutputStream
+     * @param count, a count of at least 0
+     */
+    private static void writeVarCount(BitOutputStream bitOut, long count) {
+        while((count >>> VAR_COUNT_BITS) != 0) {
+            bitOut.writeBits(BITS_PER_WORD, (int) (count & VAR_COUNT_MASK) | VAR_COUNT_MORE);
+            count >>>= VAR_COUNT_BITS;
+        }
+        bitOut.writeBits(BITS_PER_WORD, (int) count);
+    }
+    
+    /**
+     * reads a count written by writeVarCount
+     * @param bitIn, a BitInputStream
+     * @return the count
+     * @throws IOException if the count is cut off or too long
+     */
+    private static long readVarCount(BitInputStream bitIn) throws IOException {
+        long count = 0;
+        for(int shift = 0; shift < Long.SIZE; shift += VAR_COUNT_BITS) {
+            int next = bitIn.readBits(BITS_PER_WORD);
+            if(next == -1) {
+                break;
+            }
+            count |= (long) (next & VAR_COUNT_MASK) << shift;
+            if((next & VAR_COUNT_MORE) == 0) {
+                return count;
+            }
+        }
+        throw new IOException("Something is wrong with the counts in the compressed file.");
+    }
+    
+    /**
+     * converts a number of bits to an int for the methods of IHuffProcessor, which can't return
+     * more than Integer.MAX_VALUE. The exact numbers are kept as longs, see getOriginalBits,
+     * getCompressedBits and getUncompressedBits.
+     * @param bits, a number of bits
+     * @return bits, or the closest int to it
+     */
+    private static int clampToInt(long bits) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, bits));
+    }
+    
+    /**
+     * copies all of in to out, a whole array of bytes at a time
+     * @param in, the stream to read
+     * @param out, the stream to write
+     * @return the number of bytes copied
+     * @throws IOException
+     */
+    private static long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        long numCopied = 0;
+        int numRead = in.read(buffer);
+        while(numRead != -1) {
+            out.write(buffer, 0, numRead);
+            numCopied += numRead;
+            numRead = in.read(buffer);
+        }
+        return numCopied;
     }
     
     /**
@@ -236,11 +766,14 @@ public class SimpleHuffProcessor implements IHuffProcessor {
         if(viewer) {
             myViewer.showMessage("Starting to uncompress");
         }
-        BitInputStream bitIn = new BitInputStream(new BufferedInputStream(in)); 
-        BitOutputStream bitOut = new BitOutputStream(new BufferedOutputStream(out));
+        BlockBitInputStream bitIn = new BlockBitInputStream(in); 
+        BitOutputStream bitOut = new BlockBitOutputStream(out);
         
         //checks if file is uncompressable (is a hf file - starts with huff magic number)
-        if(myViewer != null && bitIn.readBits(BITS_PER_INT) != MAGIC_NUMBER) {
+        if(bitIn.readBits(BITS_PER_INT) != MAGIC_NUMBER) {
+            if(!viewer) {
+                throw new IOException("Compressed file did not start with huff magic number.");
+            }
             myViewer.showError("Error reading compressed file: did not start with huff "
                     + "magic number.");
             return -1;
@@ -253,13 +786,186 @@ public class SimpleHuffProcessor implements IHuffProcessor {
             for(int x = 0; x < ALPH_SIZE; x++) { //makes frequency array
                 freqs[x] = bitIn.readBits(BITS_PER_INT);
             }
-            tree = new HuffmanCodeTree(makeQueue()); //makes queue and then tree with the queue
+            makeCodes(STORE_COUNTS);
+        }
+        else if(headerFormat == STORE_COUNTS_VAR) {
+            for(int x = 0; x < ALPH_SIZE; x++) {
+                freqs[x] = readVarCount(bitIn);
+            }
+            makeCodes(STORE_COUNTS_VAR);
         }
         else if(headerFormat == STORE_TREE) {
             tree = new HuffmanCodeTree(bitIn);
+            codes = tree.getCodes();
+            codeLengths = tree.getCodeLengths();
+        }
+        else if(headerFormat == STORE_CUSTOM) {
+            model = HuffmanModel.read(bitIn);
+            tree = null;
+            codes = model.getCodes();
+            codeLengths = model.getCodeLengths();
+        }
+        else if(headerFormat == STORE_BLOCKS || headerFormat == STORE_BWT) {
+            
+            //blocks of a mapped file are found with the index at the end, others are read in
+            //order, and either way decoded in parallel. They are whole bytes so they go straight
+            //to out instead of through bitOut
+            BlockCodec codec = new BlockCodec(blockSize, ForkJoinPool.commonPool());
+            int headerBytes = 2*BITS_PER_INT/BITS_PER_WORD;
+            long numBytes;
+            if(in instanceof MappedFileInputStream) {
+                numBytes = codec.uncompress((MappedFileInputStream) in, headerBytes, out);
+            }
+            else {
+                numBytes = codec.uncompress(bitIn, out); //blocks decoded as they are read
+            }
+            uncompressedBits = numBytes * BITS_PER_WORD;
+            closeStreams(bitIn, bitOut);
+            if(viewer) {
+                myViewer.showMessage("Finished uncompressing");
+            }
+            return clampToInt(uncompressedBits);
+        }
+        else if(headerFormat == STORE_CONTEXT) {
+            long numBytes = readLength(bitIn);
+            contextCode = ContextHuffmanCode.read(bitIn);
+            contextCode.decode(bitIn, numBytes, out);
+            uncompressedBits = numBytes * BITS_PER_WORD;
+            closeStreams(bitIn, bitOut);
+            if(viewer) {
+                myViewer.showMessage("Finished uncompressing");
+            }
+            return clampToInt(uncompressedBits);
+        }
+        else if(headerFormat == STORE_WIDE) {
+            long numBytes = readLength(bitIn);
+            wideCode = WideSymbolCode.read(bitIn);
+            wideCode.decode(bitIn, numBytes, out);
+            uncompressedBits = numBytes * BITS_PER_WORD;
+            closeStreams(bitIn, bitOut);
+            if(viewer) {
+                myViewer.showMessage("Finished uncompressing");
+            }
+            return clampToInt(uncompressedBits);
+        }
+        else if(headerFormat == STORE_RLE) {
+            runLengthCode = RunLengthHuffmanCode.read(bitIn);
+            uncompressedBits = runLengthCode.decode(bitIn, out) * BITS_PER_WORD;
+            closeStreams(bitIn, bitOut);
+            if(viewer) {
+                myViewer.showMessage("Finished uncompressing");
+            }
+            return clampToInt(uncompressedBits);
+        }
+        else if(headerFormat == STORE_LZ) {
+            lzCode = LzHuffmanCode.read(bitIn);
+            uncompressedBits = lzCode.decode(bitIn, out) * BITS_PER_WORD;
+            closeStreams(bitIn, bitOut);
+            if(viewer) {
+                myViewer.showMessage("Finished uncompressing");
+            }
+            return clampToInt(uncompressedBits);
+        }
+        else if(headerFormat == STORE_RAW) {
+            uncompressedBits = readStored(bitIn, out) * BITS_PER_WORD;
+            closeStreams(bitIn, bitOut);
+            if(viewer) {
+                myViewer.showMessage("Finished uncompressing");
+            }
+            return clampToInt(uncompressedBits);
+        }
+        else if(headerFormat == STORE_ADAPTIVE) {
+            uncompressedBits = copy(new AdaptiveHuffmanInputStream(bitIn), out) * BITS_PER_WORD;
+            closeStreams(bitIn, bitOut);
+            if(viewer) {
+                myViewer.showMessage("Finished uncompressing");
+            }
+            return clampToInt(uncompressedBits);
+        }
+        else {
+            throw new IOException("Unknown header format in compressed file.");
         }
         
-        return writeUncompressData(bitIn, bitOut, viewer);
+        //the decode table needs every code to fit in an int, otherwise walk the tree
+        if(tree == null || tree.getMaxCodeLength() <= BITS_PER_INT) {
+            uncompressedBits = writeUncompressTable(bitIn, bitOut, viewer);
+        }
+        else {
+            uncompressedBits = writeUncompressData(bitIn, bitOut, viewer);
+        }
+        return clampToInt(uncompressedBits);
+    }
+    
+    /**
+     * writes the number of bytes of the input, in 64 bits
+     * @param bitOut, a BitOutputStream
+     * @param numBytes, the number of bytes
+     */
+    private static void writeLength(BitOutputStream bitOut, long numBytes) {
+        bitOut.writeBits(BITS_PER_INT, (int) (numBytes >>> BITS_PER_INT));
+        bitOut.writeBits(BITS_PER_INT, (int) numBytes);
+    }
+    
+    /**
+     * reads a length written by writeLength. It is read 16 bits at a time so a piece of the
+     * length that is all ones can't be mistaken for the end of the file.
+     * @param bitIn, a BitInputStream
+     * @return the number of bytes
+     * @throws IOException if the length is cut off or negative
+     */
+    private long readLength(BitInputStream bitIn) throws IOException {
+        long numBytes = 0;
+        for(int x = 0; x < Long.SIZE / LENGTH_PIECE_BITS; x++) {
+            int piece = bitIn.readBits(LENGTH_PIECE_BITS);
+            checkReadBits(piece);
+            numBytes = (numBytes << LENGTH_PIECE_BITS) | piece;
+        }
+        if(numBytes < 0) {
+            throw new IOException("Something is wrong with the length in the compressed file.");
+        }
+        return numBytes;
+    }
+    
+    /**
+     * helper method to uncompress. Copies the input stored in a STORE_RAW file to out.
+     * @param bitIn, a BlockBitInputStream that has read the header format
+     * @param out, the stream the input is copied to
+     * @return the number of bytes copied
+     * @throws IOException if the length is not valid or the file ends early
+     */
+    private long readStored(BlockBitInputStream bitIn, OutputStream out) throws IOException {
+        long numBytes = readLength(bitIn);
+        byte[] buffer = new byte[1 << 16];
+        long left = numBytes;
+        while(left > 0) {
+            int numRead = bitIn.read(buffer, 0, (int) Math.min(buffer.length, left));
+            if(numRead == -1) {
+                throw new IOException("The compressed file ended before all the data.");
+            }
+            out.write(buffer, 0, numRead);
+            left -= numRead;
+        }
+        return numBytes;
+    }
+    
+    /**
+     * helper method to uncompress. Writes the actual data part of the file by decoding whole
+     * codes at a time with a HuffmanDecodeTable made from the codes.
+     * @param bitIn, a BlockBitInputStream that has read the header
+     * @param bitOut, a BitOutputStream
+     * @return the number of bits written to uncompressed file/stream
+     * @throws IOException
+     */
+    private long writeUncompressTable(BlockBitInputStream bitIn, BitOutputStream bitOut, 
+            boolean viewer) throws IOException {
+        HuffmanDecodeTable table = new HuffmanDecodeTable(codes, codeLengths);
+        long count = table.decode(bitIn, bitOut) * BITS_PER_WORD;
+        
+        closeStreams(bitIn, bitOut);
+        if(viewer) {
+            myViewer.showMessage("Finished uncompressing");
+        }
+        return count;
     }
     
     /**
@@ -270,10 +976,10 @@ public class SimpleHuffProcessor implements IHuffProcessor {
      * @return the number of bits written to uncompressed file/stream
      * @throws IOException
      */
-    private int writeUncompressData(BitInputStream bitIn, BitOutputStream bitOut, boolean viewer) 
+    private long writeUncompressData(BitInputStream bitIn, BitOutputStream bitOut, boolean viewer) 
             throws IOException {
         
-        int count = 0;
+        long count = 0;
         int bit = bitIn.readBits(1);
         checkReadBits(bit); //checks if bit is a valid value
         
@@ -322,6 +1028,37 @@ public class SimpleHuffProcessor implements IHuffProcessor {
         return result;
     }
     
+    /**
+     * gets the number of bits read by the last call to preprocessCompress, which can be more
+     * than the int it returns can hold
+     * pre: none
+     * post: none
+     * @return the number of bits of the original file
+     */
+    public long getOriginalBits() {
+        return origBits;
+    }
+    
+    /**
+     * gets the number of bits compress will write, found by the last call to preprocessCompress
+     * pre: none
+     * post: none
+     * @return the number of bits of the compressed file
+     */
+    public long getCompressedBits() {
+        return compressedBits;
+    }
+    
+    /**
+     * gets the number of bits written by the last call to uncompress
+     * pre: none
+     * post: none
+     * @return the number of bits of the uncompressed file
+     */
+    public long getUncompressedBits() {
+        return uncompressedBits;
+    }
+    
     /**
      * sets viewer to parameter passed in
      * pre: none
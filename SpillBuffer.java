@@ -0,0 +1,177 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Keeps a copy of the bytes written to it so they can be read again, for input that can only be
+ * read once such as a pipe or socket. Bytes are kept in memory until there are more than the
+ * memory limit, then everything is moved to a temporary file and later bytes go to the file.
+ * <P>
+ * <code>tee</code> wraps a stream so every byte read from it is also written to the buffer, so
+ * the input can be used, for example counted, while it is being kept.
+ * <code>getInputStream</code> reads the bytes back as often as needed and <code>close</code>
+ * deletes the temporary file.
+ */
+public class SpillBuffer extends OutputStream {
+
+    public static final int DEFAULT_MEMORY_LIMIT = 1 << 26;
+
+    private static final int INITIAL_SIZE = 1 << 16;
+
+    private int memoryLimit;
+    private byte[] bytes;
+    private int size;
+    private File spillFile;
+    private OutputStream spillOut;
+    private long length;
+
+    /**
+     * makes an empty buffer that keeps up to DEFAULT_MEMORY_LIMIT bytes in memory
+     * pre: none
+     * post: none
+     */
+    public SpillBuffer() {
+        this(DEFAULT_MEMORY_LIMIT);
+    }
+
+    /**
+     * makes an empty buffer that keeps up to memoryLimit bytes in memory
+     * pre: memoryLimit >= 0
+     * post: none
+     * @param memoryLimit, the most bytes to keep in memory before spilling to a file
+     */
+    public SpillBuffer(int memoryLimit) {
+        if(memoryLimit < 0) {
+            throw new IllegalArgumentException("Violation of precondition: SpillBuffer. "
+                    + "Memory limit can't be negative.");
+        }
+        this.memoryLimit = memoryLimit;
+        bytes = new byte[Math.min(INITIAL_SIZE, memoryLimit)];
+    }
+
+    /**
+     * keeps one byte
+     * @param b, the byte to keep, in the low 8 bits
+     * @throws IOException if the temporary file can't be written
+     */
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    /**
+     * keeps len bytes of b starting at off
+     * @param b, the bytes to keep
+     * @param off, the index of the first byte to keep
+     * @param len, the number of bytes to keep
+     * @throws IOException if the temporary file can't be written
+     */
+    public void write(byte[] b, int off, int len) throws IOException {
+        if(spillOut == null && size + (long) len > memoryLimit) {
+            spill();
+        }
+        if(spillOut != null) {
+            spillOut.write(b, off, len);
+        }
+        else {
+            if(size + len > bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(memoryLimit,
+                        Math.max(2L * bytes.length, size + len)));
+            }
+            System.arraycopy(b, off, bytes, size, len);
+            size += len;
+        }
+        length += len;
+    }
+
+    /**
+     * moves the bytes kept in memory to a new temporary file
+     * @throws IOException if the file can't be made or written
+     */
+    private void spill() throws IOException {
+        spillFile = File.createTempFile("huff", ".spill");
+        spillOut = new BufferedOutputStream(new FileOutputStream(spillFile), INITIAL_SIZE);
+        spillOut.write(bytes, 0, size);
+        bytes = null;
+        size = 0;
+    }
+
+    /**
+     * gets the number of bytes kept
+     * pre: none
+     * post: none
+     * @return the number of bytes written to the buffer
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * gets a stream that reads the bytes kept from the start. Bytes written after this call are
+     * not guaranteed to be read.
+     * pre: the buffer has not been closed
+     * post: none
+     * @return a stream of the bytes kept
+     * @throws IOException if the temporary file can't be read
+     */
+    public InputStream getInputStream() throws IOException {
+        if(spillOut == null) {
+            return new ByteArrayInputStream(bytes, 0, size);
+        }
+        spillOut.flush();
+        return new BufferedInputStream(new FileInputStream(spillFile), INITIAL_SIZE);
+    }
+
+    /**
+     * makes a stream that reads from in and keeps a copy of each byte read in this buffer
+     * pre: in != null
+     * post: none
+     * @param in, the stream to read
+     * @return a stream that reads the same bytes as in
+     */
+    public InputStream tee(InputStream in) {
+        return new FilterInputStream(in) {
+            public int read() throws IOException {
+                int b = super.read();
+                if(b != -1) {
+                    write(b);
+                }
+                return b;
+            }
+
+            public int read(byte[] b, int off, int len) throws IOException {
+                int numRead = super.read(b, off, len);
+                if(numRead > 0) {
+                    write(b, off, numRead);
+                }
+                return numRead;
+            }
+
+            public long skip(long n) throws IOException {
+                return 0; //skipped bytes would not be kept
+            }
+        };
+    }
+
+    /**
+     * lets go of the bytes kept and deletes the temporary file, if there is one
+     * pre: none
+     * post: the buffer can't be used
+     * @throws IOException if the temporary file can't be closed
+     */
+    public void close() throws IOException {
+        bytes = null;
+        if(spillOut != null) {
+            spillOut.close();
+            spillOut = null;
+            spillFile.delete();
+        }
+    }
+}
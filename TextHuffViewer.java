@@ -1,10 +1,6 @@
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 import java.util.Scanner;
 
 /**
@@ -100,15 +96,36 @@ public class TextHuffViewer implements IHuffViewer {
             System.out.print("Current Header format for compressing: ");
             if (this.myHeaderFormat == IHuffConstants.STORE_COUNTS) {
                 System.out.println("Standard COUNT Format");
-            } else {
+            } else if (this.myHeaderFormat == IHuffConstants.STORE_TREE) {
                 System.out.println("Standard TREE Format");
+            } else if (this.myHeaderFormat == IHuffConstants.STORE_CUSTOM) {
+                System.out.println("CUSTOM Format (canonical code lengths)");
+            } else if (this.myHeaderFormat == IHuffConstants.STORE_BLOCKS) {
+                System.out.println("BLOCK Format (parallel blocks)");
+            } else if (this.myHeaderFormat == IHuffConstants.STORE_COUNTS_VAR) {
+                System.out.println("VARIABLE COUNT Format (counts of any size)");
+            } else if (this.myHeaderFormat == IHuffConstants.STORE_CONTEXT) {
+                System.out.println("CONTEXT Format (code chosen by previous byte)");
+            } else if (this.myHeaderFormat == IHuffConstants.STORE_WIDE) {
+                System.out.println("WIDE Format (16 bit symbols)");
+            } else if (this.myHeaderFormat == IHuffConstants.STORE_RLE) {
+                System.out.println("RUN LENGTH Format (long runs of a byte)");
+            } else if (this.myHeaderFormat == IHuffConstants.STORE_BWT) {
+                System.out.println("BWT Format (sorted parallel blocks)");
+            } else if (this.myHeaderFormat == IHuffConstants.STORE_LZ) {
+                System.out.println("LZ Format (repeated strings)");
+            } else if (this.myHeaderFormat == IHuffConstants.STORE_RAW) {
+                System.out.println("RAW Format (stored, no compression)");
+            } else {
+                System.out.println("ADAPTIVE Format (no header)");
             }
             System.out.println("Current force compression status: " + this.myForce);
             System.out.println();
             System.out.println("OPTIONS");
             System.out.println("1. File operations. ");
             System.out.println("2. Flip Force Compression status.");
-            System.out.println("3. Flip Header format.");
+            System.out.println("3. Change Header format (count, tree, custom, blocks, adaptive,"
+                    + " variable count, context, wide, run length, bwt, lz, raw).");
             System.out.println("4. Quit (or any value other than 1, 2, or 3)");
             System.out.println();
             choice = processChoice();
@@ -143,10 +160,32 @@ public class TextHuffViewer implements IHuffViewer {
             } else if (firstCharValue == MenuChoices.FLIP_COMPRESSION_STATUS.ordinal()) {
                 myForce = !myForce;
             } else {
-                // must be a 3, flip the header format
-                myHeaderFormat =
-                        (myHeaderFormat == IHuffConstants.STORE_COUNTS) ? IHuffConstants.STORE_TREE
-                                : IHuffConstants.STORE_COUNTS;
+                // must be a 3, go to the next header format
+                if (myHeaderFormat == IHuffConstants.STORE_COUNTS) {
+                    myHeaderFormat = IHuffConstants.STORE_TREE;
+                } else if (myHeaderFormat == IHuffConstants.STORE_TREE) {
+                    myHeaderFormat = IHuffConstants.STORE_CUSTOM;
+                } else if (myHeaderFormat == IHuffConstants.STORE_CUSTOM) {
+                    myHeaderFormat = IHuffConstants.STORE_BLOCKS;
+                } else if (myHeaderFormat == IHuffConstants.STORE_BLOCKS) {
+                    myHeaderFormat = IHuffConstants.STORE_ADAPTIVE;
+                } else if (myHeaderFormat == IHuffConstants.STORE_ADAPTIVE) {
+                    myHeaderFormat = IHuffConstants.STORE_COUNTS_VAR;
+                } else if (myHeaderFormat == IHuffConstants.STORE_COUNTS_VAR) {
+                    myHeaderFormat = IHuffConstants.STORE_CONTEXT;
+                } else if (myHeaderFormat == IHuffConstants.STORE_CONTEXT) {
+                    myHeaderFormat = IHuffConstants.STORE_WIDE;
+                } else if (myHeaderFormat == IHuffConstants.STORE_WIDE) {
+                    myHeaderFormat = IHuffConstants.STORE_RLE;
+                } else if (myHeaderFormat == IHuffConstants.STORE_RLE) {
+                    myHeaderFormat = IHuffConstants.STORE_BWT;
+                } else if (myHeaderFormat == IHuffConstants.STORE_BWT) {
+                    myHeaderFormat = IHuffConstants.STORE_LZ;
+                } else if (myHeaderFormat == IHuffConstants.STORE_LZ) {
+                    myHeaderFormat = IHuffConstants.STORE_RAW;
+                } else {
+                    myHeaderFormat = IHuffConstants.STORE_COUNTS;
+                }
 
             }
         }
@@ -187,7 +226,7 @@ public class TextHuffViewer implements IHuffViewer {
      */
     private void preprocess() {
         showMessage("Begining preprocessing of " + myInputFile + ".");
-        ByteArrayInputStream inputStream = getFastByteReader(myInputFile);
+        MappedFileInputStream inputStream = getFastByteReader(myInputFile);
         try {
             int saved = myModel.preprocessCompress(inputStream, myHeaderFormat);
             showMessage("save(d): " + saved + " bits");
@@ -207,7 +246,7 @@ public class TextHuffViewer implements IHuffViewer {
         } else {
             try {
                 FileOutputStream out = new FileOutputStream(new File(newName));
-                ByteArrayInputStream inputStream = getFastByteReader(myInputFile);
+                MappedFileInputStream inputStream = getFastByteReader(myInputFile);
                 myModel.compress(inputStream, out, myForce);
             } catch (IOException e) {
                 showError("Problem while trying to compress file.");
@@ -280,7 +319,7 @@ public class TextHuffViewer implements IHuffViewer {
         uncompressedName = setNewFileName("compressed", uncompressedName);
         try {
             FileOutputStream out = new FileOutputStream(new File(uncompressedName));
-            ByteArrayInputStream inputStream = getFastByteReader(myInputFile);
+            MappedFileInputStream inputStream = getFastByteReader(myInputFile);
             myModel.uncompress(inputStream, out);
         } catch (IOException e) {
             showError("Problem while trying to uncompress file.");
@@ -296,18 +335,10 @@ public class TextHuffViewer implements IHuffViewer {
         myInputFile = new File(path);
     }
 
-    // Get a ByteArrayInputStream to read from the given file.
-    private ByteArrayInputStream getFastByteReader(File f) {
+    // Get a stream that reads the given file through memory mapped windows.
+    private MappedFileInputStream getFastByteReader(File f) {
         try {
-            FileChannel channel = new FileInputStream(f).getChannel();
-            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
-            byte[] barray = new byte[buffer.limit()];
-            if (barray.length != channel.size()) {
-                showError(String.format("Reading %s error: lengths differ %d %ld\n", f.getName(),
-                        barray.length, channel.size()));
-            }
-            buffer.get(barray);
-            return new ByteArrayInputStream(barray);
+            return new MappedFileInputStream(f);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -0,0 +1,388 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A Huffman code over symbols wider than a byte, for the STORE_WIDE format. The input is read
+ * as a sequence of symbols of a fixed number of bits, from 8 to 16, most significant bit first,
+ * so 16 bit symbols suit UTF-16 text and dumps of 16 bit numbers, whose bytes mean little on
+ * their own. Bits left at the end that don't make a whole symbol are stored as they are.
+ * <P>
+ * The alphabet is sized at run time from the width. The histogram is one array of longs indexed
+ * by symbol, 512 KB at 16 bits and allocated once, and everything after it only holds the
+ * symbols that are used: the code lengths come from HuffmanCodeBuilder.limitedCodeLengths over
+ * the used symbols, the code keeps one code and length per used symbol, the decode table only
+ * has their codes, and the header lists only them. The one other table indexed by symbol is
+ * the lookup from symbol to code that encode makes for the length of one call. The encoder
+ * already has the dense histogram, the lookup is smaller than it, 320 KB at 16 bits, and
+ * it codes each symbol with one array access instead of a search.
+ * The header is the width, the number of used symbols, then for each used symbol in order the
+ * gap from the one before it as an Elias gamma code and its code length in 5 bits. There is no
+ * PSEUDO_EOF, the number of bytes is stored before the header instead.
+ */
+public class WideSymbolCode implements IHuffConstants {
+
+    public static final int MIN_WIDTH = BITS_PER_WORD;
+    public static final int MAX_WIDTH = 16;
+
+    /** The longest code length used, long enough for every symbol of MAX_WIDTH bits. */
+    public static final int MAX_CODE_LENGTH = 24;
+
+    private static final int BITS_PER_WIDTH = 8;
+    private static final int BITS_PER_CODE_LENGTH = 5;
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private int width;
+    private int[] symbols;
+    private int[] codes;
+    private byte[] codeLengths;
+    private HuffmanDecodeTable decodeTable;
+
+    /**
+     * makes the code for the used symbols and their code lengths. codes[x] and codeLengths[x]
+     * are the code of symbols[x].
+     * @param width, the number of bits in a symbol
+     * @param symbols, the used symbols in increasing order
+     * @param lengths, the code length of each used symbol
+     * @throws IllegalArgumentException if the lengths do not make a prefix code
+     */
+    private WideSymbolCode(int width, int[] symbols, byte[] lengths) {
+        this.width = width;
+        this.symbols = symbols;
+        codes = new CanonicalHuffmanCode(lengths).getCodes();
+        codeLengths = lengths;
+    }
+
+    /**
+     * checks that a width can be used
+     * pre: none
+     * post: none
+     * @param width, a number of bits in a symbol
+     * @throws IllegalArgumentException if width is not between MIN_WIDTH and MAX_WIDTH
+     */
+    public static void checkWidth(int width) {
+        if(width < MIN_WIDTH || width > MAX_WIDTH) {
+            throw new IllegalArgumentException("Violation of precondition: symbol width must be "
+                    + "between " + MIN_WIDTH + " and " + MAX_WIDTH + ": " + width);
+        }
+    }
+
+    /**
+     * reads all of in and adds the number of times each symbol occurs to counts. Bits at the
+     * end that don't make a whole symbol are not counted.
+     * pre: in != null, MIN_WIDTH <= width <= MAX_WIDTH, counts.length == 2^width
+     * post: all of in has been read
+     * @param in, the stream to count
+     * @param width, the number of bits in a symbol
+     * @param counts, the counts to add to
+     * @return the number of bytes read
+     * @throws IOException if in can't be read
+     */
+    public static long count(InputStream in, int width, long[] counts) throws IOException {
+        SymbolReader reader = new SymbolReader(width) {
+            void symbol(int symbol) {
+                counts[symbol]++;
+            }
+        };
+        return reader.readAll(in);
+    }
+
+    /**
+     * makes the code for symbol counts, with no code longer than MAX_CODE_LENGTH
+     * pre: MIN_WIDTH <= width <= MAX_WIDTH, counts.length == 2^width, no count is negative
+     * post: none
+     * @param width, the number of bits in a symbol
+     * @param counts, the number of times each symbol occurs
+     * @return the code for counts
+     */
+    public static WideSymbolCode fromCounts(int width, long[] counts) {
+        checkWidth(width);
+        int numUsed = 0;
+        for(long count : counts) {
+            numUsed += count > 0 ? 1 : 0;
+        }
+        int[] symbols = new int[numUsed];
+        long[] freqs = new long[numUsed];
+        numUsed = 0;
+        for(int symbol = 0; symbol < counts.length; symbol++) {
+            if(counts[symbol] > 0) {
+                symbols[numUsed] = symbol;
+                freqs[numUsed++] = counts[symbol];
+            }
+        }
+        byte[] lengths = numUsed == 1 ? new byte[] {1}
+            : HuffmanCodeBuilder.limitedCodeLengths(freqs, MAX_CODE_LENGTH);
+        return new WideSymbolCode(width, symbols, lengths);
+    }
+
+    /**
+     * gets the number of bits in a symbol
+     * pre: none
+     * post: none
+     * @return the width of the symbols
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * gets the number of symbols with a code
+     * pre: none
+     * post: none
+     * @return the number of used symbols
+     */
+    public int getNumSymbols() {
+        return symbols.length;
+    }
+
+    /**
+     * finds the number of bits it takes to code the symbols counted and the bits left over
+     * pre: counts are the counts the code was made from, numBytes is the number of bytes counted
+     * post: none
+     * @param counts, the number of times each symbol occurs
+     * @param numBytes, the number of bytes of the input
+     * @return the number of bits of the coded data, not counting the header
+     */
+    public long dataBits(long[] counts, long numBytes) {
+        long bits = numBytes * BITS_PER_WORD % width;
+        for(int x = 0; x < symbols.length; x++) {
+            bits += counts[symbols[x]] * codeLengths[x];
+        }
+        return bits;
+    }
+
+    /**
+     * gets the number of bits write will write
+     * pre: none
+     * post: none
+     * @return the number of bits in the header for this code
+     */
+    public long headerBits() {
+        long bits = BITS_PER_WIDTH + BITS_PER_INT;
+        int previous = -1;
+        for(int symbol : symbols) {
+            bits += gammaBits(symbol - previous) + BITS_PER_CODE_LENGTH;
+            previous = symbol;
+        }
+        return bits;
+    }
+
+    /**
+     * writes the header for this code so read can make the same code
+     * pre: out != null
+     * post: the header has been written to out
+     * @param out, a BitOutputStream
+     */
+    public void write(BitOutputStream out) {
+        out.writeBits(BITS_PER_WIDTH, width);
+        out.writeBits(BITS_PER_INT, symbols.length);
+        int previous = -1;
+        for(int x = 0; x < symbols.length; x++) {
+            writeGamma(out, symbols[x] - previous);
+            out.writeBits(BITS_PER_CODE_LENGTH, codeLengths[x]);
+            previous = symbols[x];
+        }
+    }
+
+    /**
+     * reads a header written by write and makes the code, with the table to decode it
+     * pre: in != null
+     * post: the header has been read from in
+     * @param in, a BlockBitInputStream positioned at the start of the header
+     * @return the code in the header
+     * @throws IOException if the header is not valid or in can't be read
+     */
+    public static WideSymbolCode read(BlockBitInputStream in) throws IOException {
+        int width = readChecked(in, BITS_PER_WIDTH);
+        int numUsed = readChecked(in, BITS_PER_INT);
+        if(width < MIN_WIDTH || width > MAX_WIDTH || numUsed < 0 || numUsed > 1 << width) {
+            throw new IOException("Something is wrong with the symbol header.");
+        }
+        int[] symbols = new int[numUsed];
+        byte[] lengths = new byte[numUsed];
+        int previous = -1;
+        for(int x = 0; x < numUsed; x++) {
+            previous += readGamma(in);
+            lengths[x] = (byte) readChecked(in, BITS_PER_CODE_LENGTH);
+            if(previous >= 1 << width || lengths[x] == 0 || lengths[x] > MAX_CODE_LENGTH) {
+                throw new IOException("Something is wrong with the symbol header.");
+            }
+            symbols[x] = previous;
+        }
+        WideSymbolCode code;
+        try {
+            code = new WideSymbolCode(width, symbols, lengths);
+        } catch(IllegalArgumentException e) {
+            throw new IOException("Code lengths in header do not make a prefix code.");
+        }
+        code.decodeTable = new HuffmanDecodeTable(code.codes, code.codeLengths);
+        return code;
+    }
+
+    /**
+     * writes the code of every symbol of in, then the bits left over
+     * pre: in != null, out != null, the code was made from the counts of in
+     * post: all of in has been read
+     * @param in, the stream to code
+     * @param out, the stream the codes are written to
+     * @return the number of bytes read
+     * @throws IOException if in can't be read or has a symbol with no code
+     */
+    public long encode(InputStream in, BitOutputStream out) throws IOException {
+        int[] symbolCodes = new int[1 << width];
+        byte[] symbolLengths = new byte[1 << width];
+        for(int x = 0; x < symbols.length; x++) {
+            symbolCodes[symbols[x]] = codes[x];
+            symbolLengths[symbols[x]] = codeLengths[x];
+        }
+        SymbolReader reader = new SymbolReader(width) {
+            void symbol(int symbol) throws IOException {
+                int length = symbolLengths[symbol];
+                if(length == 0) {
+                    throw new IOException("The input is not the same as it was when counted.");
+                }
+                out.writeBits(length, symbolCodes[symbol]);
+            }
+        };
+        long numBytes = reader.readAll(in);
+        out.writeBits(reader.leftBits, (int) reader.left);
+        return numBytes;
+    }
+
+    /**
+     * decodes the symbols of numBytes bytes and the bits left over, and writes them to out
+     * pre: the code was made by read, in != null, out != null
+     * post: the codes have been read from in and out has been flushed
+     * @param in, a BlockBitInputStream positioned at the start of the codes
+     * @param numBytes, the number of bytes to decode
+     * @param out, the stream the bytes are written to
+     * @throws IOException if a code is not valid, in ends early or a stream can't be used
+     */
+    public void decode(BlockBitInputStream in, long numBytes, OutputStream out)
+            throws IOException {
+        long numBits = numBytes * BITS_PER_WORD;
+        long numSymbols = numBits / width;
+        int leftBits = (int) (numBits % width);
+        if(numSymbols > 0 && symbols.length == 0) {
+            throw new IOException("Something is wrong with the symbol header.");
+        }
+        BitOutputStream bitOut = new BlockBitOutputStream(out);
+        for(long x = 0; x < numSymbols; x++) {
+            int index = decodeTable.decodeValue(in);
+            if(index < 0) {
+                throw new IOException("The compressed file ended before all the data.");
+            }
+            bitOut.writeBits(width, symbols[index]);
+        }
+        int left = in.readBits(leftBits);
+        if(left == -1) {
+            throw new IOException("The compressed file ended before all the data.");
+        }
+        bitOut.writeBits(leftBits, left);
+        bitOut.flush();
+    }
+
+    private static int gammaBits(int n) {
+        return 2 * (BITS_PER_INT - Integer.numberOfLeadingZeros(n)) - 1;
+    }
+
+    /**
+     * writes n as an Elias gamma code: one less than the number of bits in n as zeros, then n
+     * @param out, a BitOutputStream
+     * @param n, a number of at least 1
+     */
+    private static void writeGamma(BitOutputStream out, int n) {
+        int numBits = BITS_PER_INT - Integer.numberOfLeadingZeros(n);
+        out.writeBits(numBits - 1, 0);
+        out.writeBits(numBits, n);
+    }
+
+    /**
+     * reads a number written by writeGamma
+     * @param in, a BitInputStream
+     * @return the number read
+     * @throws IOException if in ends or the number is too large
+     */
+    private static int readGamma(BitInputStream in) throws IOException {
+        int numZeros = 0;
+        while(readChecked(in, 1) == 0) {
+            numZeros++;
+            if(numZeros > MAX_WIDTH) {
+                throw new IOException("Something is wrong with the symbol header.");
+            }
+        }
+        return (1 << numZeros) | (numZeros == 0 ? 0 : readChecked(in, numZeros));
+    }
+
+    private static int readChecked(BitInputStream in, int howManyBits) throws IOException {
+        int bits = in.readBits(howManyBits);
+        if(bits == -1) {
+            throw new IOException("Symbol header ended early.");
+        }
+        return bits;
+    }
+
+    /**
+     * splits the bytes of a stream into symbols of a fixed width, most significant bit first,
+     * a chunk of bytes at a time. A MappedFileInputStream is read a mapped window at a time
+     * without copying. The bits left after the last whole symbol are kept in left.
+     */
+    private abstract static class SymbolReader {
+
+        private int width;
+        private int mask;
+        private long left;
+        private int leftBits;
+
+        SymbolReader(int width) {
+            this.width = width;
+            mask = (1 << width) - 1;
+        }
+
+        /**
+         * handles the next symbol
+         * @param symbol, the symbol
+         * @throws IOException if the symbol can't be handled
+         */
+        abstract void symbol(int symbol) throws IOException;
+
+        long readAll(InputStream in) throws IOException {
+            long numBytes = 0;
+            if(in instanceof MappedFileInputStream) {
+                MappedFileInputStream mapped = (MappedFileInputStream) in;
+                ByteBuffer window = mapped.nextWindow();
+                while(window != null) {
+                    read(window);
+                    numBytes += window.remaining();
+                    window = mapped.nextWindow();
+                }
+                return numBytes;
+            }
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int numRead = in.read(chunk);
+            while(numRead != -1) {
+                read(ByteBuffer.wrap(chunk, 0, numRead));
+                numBytes += numRead;
+                numRead = in.read(chunk);
+            }
+            return numBytes;
+        }
+
+        private void read(ByteBuffer bytes) throws IOException {
+            long bits = left;
+            int numBits = leftBits;
+            int end = bytes.limit();
+            for(int x = bytes.position(); x < end; x++) {
+                bits = (bits << BITS_PER_WORD) | (bytes.get(x) & 0xff);
+                numBits += BITS_PER_WORD;
+                if(numBits >= width) {
+                    numBits -= width;
+                    symbol((int) (bits >>> numBits) & mask);
+                }
+            }
+            left = bits & ((1L << numBits) - 1);
+            leftBits = numBits;
+        }
+    }
+}